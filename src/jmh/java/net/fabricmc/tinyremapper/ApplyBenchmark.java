@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Remapping single classes through {@link AsmClassRemapper}, excluding the analysis and propagation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ApplyBenchmark {
+	@Param({ "1000" })
+	public int classes;
+
+	@Param({ "false", "true" })
+	public boolean skipLocalMapping;
+
+	@Setup
+	public void setup() {
+		fixtures = Fixtures.createHierarchy(2, classes - 1, 8);
+		remapper = TinyRemapper.newRemapper().withMappings(fixtures.getMappingProvider()).threads(1).build();
+		remapper.updateInputs(fixtures.classes, Collections.emptyList());
+		asmRemapper = remapper.getRemapper();
+	}
+
+	@TearDown
+	public void tearDown() {
+		remapper.finish();
+	}
+
+	@Benchmark
+	public void apply(Blackhole blackhole) {
+		for (byte[] data : fixtures.classes) {
+			ClassReader reader = new ClassReader(data);
+			ClassWriter writer = new ClassWriter(0);
+			reader.accept(new AsmClassRemapper(writer, asmRemapper, false, skipLocalMapping, false), ClassReader.EXPAND_FRAMES);
+			blackhole.consume(writer.toByteArray());
+		}
+	}
+
+	private Fixtures fixtures;
+	private TinyRemapper remapper;
+	private AsmRemapper asmRemapper;
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.commons.Remapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Descriptor and signature mapping with the {@link AsmRemapper} caches against the uncached ASM implementation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class DescriptorCacheBenchmark {
+	@Param({ "true", "false" })
+	public boolean cached;
+
+	@Setup
+	public void setup() {
+		Fixtures fixtures = Fixtures.createHierarchy(2, 99, 1);
+		tinyRemapper = TinyRemapper.newRemapper().withMappings(fixtures.getMappingProvider()).threads(1).build();
+		tinyRemapper.updateInputs(fixtures.classes, Collections.emptyList());
+		AsmRemapper asmRemapper = tinyRemapper.getRemapper();
+
+		remapper = cached ? asmRemapper : new Remapper() {
+			@Override
+			public String map(String typeName) {
+				return asmRemapper.map(typeName);
+			}
+		};
+
+		for (int i = 0; i < 100; i++) {
+			String cls = Fixtures.getClassName(i);
+			String other = Fixtures.getClassName(99 - i);
+
+			methodDescs.add("(IL"+cls+";[L"+other+";Ljava/lang/String;)L"+cls+";");
+			signatures.add("<T:L"+cls+";>(Ljava/util/List<TT;>;Ljava/util/Map<Ljava/lang/String;L"+other+";>;)V");
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		tinyRemapper.finish();
+	}
+
+	@Benchmark
+	public void mapMethodDesc(Blackhole blackhole) {
+		for (String desc : methodDescs) {
+			blackhole.consume(remapper.mapMethodDesc(desc));
+		}
+	}
+
+	@Benchmark
+	public void mapSignature(Blackhole blackhole) {
+		for (String signature : signatures) {
+			blackhole.consume(remapper.mapSignature(signature, false));
+		}
+	}
+
+	private TinyRemapper tinyRemapper;
+	private Remapper remapper;
+	private final List<String> methodDescs = new ArrayList<>();
+	private final List<String> signatures = new ArrayList<>();
+}
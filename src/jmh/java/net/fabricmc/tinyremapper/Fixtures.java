@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Generated classes and matching mappings for the benchmarks, so they run without external inputs.
+ *
+ * <p>The classes form a tree of the given depth where every non-leaf class has width subclasses. Each class declares
+ * the same fields and overrides the same methods, all of them mapped, plus a method of its own.
+ */
+final class Fixtures {
+	static Fixtures createHierarchy(int depth, int width, int members) {
+		Fixtures ret = new Fixtures(members);
+		List<String> level = new ArrayList<>();
+		level.add(null);
+
+		for (int i = 0; i < depth; i++) {
+			List<String> next = new ArrayList<>();
+
+			for (String parent : level) {
+				for (int j = 0; j < (parent == null ? 1 : width); j++) {
+					String name = ret.addClass(parent);
+					next.add(name);
+				}
+			}
+
+			level = next;
+		}
+
+		return ret;
+	}
+
+	private Fixtures(int members) {
+		this.members = members;
+	}
+
+	private String addClass(String superName) {
+		String name = getClassName(classes.size());
+		if (superName == null) root = name;
+		String rootName = root;
+
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName != null ? superName : "java/lang/Object", null);
+		cw.visitSource(name.substring(name.indexOf('/') + 1)+".java", null);
+
+		classMap.put(name, "mapped/"+name);
+
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName != null ? superName : "java/lang/Object", "<init>", "()V", false);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		String desc = "(IL"+rootName+";)L"+rootName+";";
+
+		for (int i = 0; i < members; i++) {
+			String fieldDesc = "L"+rootName+";";
+			cw.visitField(Opcodes.ACC_PROTECTED, "f"+i, fieldDesc, null, null).visitEnd();
+			fieldMap.put(name+"/"+MemberInstance.getFieldId("f"+i, fieldDesc, false), "field"+i);
+
+			addMethod(cw, name, "m"+i, desc, "m"+((i + 1) % members), rootName);
+			String id = name+"/"+MemberInstance.getMethodId("m"+i, desc);
+			methodMap.put(id, "method"+i);
+			localMap.put(id, new String[] { null, "index", "value" });
+		}
+
+		addMethod(cw, name, "own"+classes.size(), desc, "m0", rootName);
+
+		cw.visitEnd();
+		classes.add(cw.toByteArray());
+
+		return name;
+	}
+
+	private static void addMethod(ClassWriter cw, String owner, String name, String desc, String target, String rootName) {
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, name, desc, null, null);
+		Label start = new Label();
+		Label end = new Label();
+
+		mv.visitCode();
+		mv.visitLabel(start);
+		mv.visitVarInsn(Opcodes.ALOAD, 2);
+		mv.visitVarInsn(Opcodes.ASTORE, 3);
+		mv.visitVarInsn(Opcodes.ILOAD, 1);
+		mv.visitInsn(Opcodes.ICONST_1);
+		mv.visitInsn(Opcodes.IADD);
+		mv.visitVarInsn(Opcodes.ISTORE, 4);
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitVarInsn(Opcodes.ILOAD, 4);
+		mv.visitVarInsn(Opcodes.ALOAD, 3);
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, owner, target, desc, false);
+		mv.visitInsn(Opcodes.ARETURN);
+		mv.visitLabel(end);
+		mv.visitLocalVariable("this", "L"+owner+";", null, start, end, 0);
+		mv.visitLocalVariable("a", "I", null, start, end, 1);
+		mv.visitLocalVariable("b", "L"+rootName+";", null, start, end, 2);
+		mv.visitLocalVariable("copy", "L"+rootName+";", null, start, end, 3);
+		mv.visitLocalVariable("next", "I", null, start, end, 4);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Class with a single static method consisting of the given number of instructions, declaring a local variable at
+	 * every localInterval-th instruction that stays in scope until the end of the method.
+	 *
+	 * <p>The mappings only rename the method's argument, which makes the remapper process all of its locals.
+	 */
+	static Fixtures createLargeMethod(int instructions, int localInterval) {
+		Fixtures ret = new Fixtures(0);
+		String name = getClassName(0);
+		ret.root = name;
+
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "large", "(I)V", null, null);
+		Label end = new Label();
+		List<Label> starts = new ArrayList<>();
+
+		mv.visitCode();
+
+		for (int i = 0; i < instructions - 1; i++) {
+			if (i % localInterval == 0) {
+				Label start = new Label();
+				mv.visitLabel(start);
+				starts.add(start);
+			}
+
+			mv.visitInsn(Opcodes.NOP);
+		}
+
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitLabel(end);
+		mv.visitLocalVariable("arg", "I", null, starts.get(0), end, 0);
+
+		for (int i = 0; i < starts.size(); i++) {
+			mv.visitLocalVariable("local"+i, "I", null, starts.get(i), end, 1 + i % 250);
+		}
+
+		mv.visitMaxs(0, 251);
+		mv.visitEnd();
+		cw.visitEnd();
+		ret.classes.add(cw.toByteArray());
+
+		ret.classMap.put(name, "mapped/"+name);
+		ret.localMap.put("mapped/"+name+"/"+MemberInstance.getMethodId("large", "(I)V"), new String[] { "value" }); // keyed by the mapped owner
+
+		return ret;
+	}
+
+	IMappingProvider getMappingProvider() {
+		return new IMappingProvider() {
+			@Override
+			public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap) {
+				load(classMap, fieldMap, methodMap, new HashMap<>());
+			}
+
+			@Override
+			public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap, Map<String, String[]> localMap) {
+				classMap.putAll(Fixtures.this.classMap);
+				fieldMap.putAll(Fixtures.this.fieldMap);
+				methodMap.putAll(Fixtures.this.methodMap);
+				localMap.putAll(Fixtures.this.localMap);
+			}
+		};
+	}
+
+	/**
+	 * Mappings for the members declared by the root class only, the rest has to come from propagation.
+	 */
+	IMappingProvider getRootMappingProvider() {
+		String prefix = root+"/";
+
+		return (classMap, fieldMap, methodMap) -> {
+			classMap.putAll(this.classMap);
+
+			for (Map.Entry<String, String> entry : this.fieldMap.entrySet()) {
+				if (entry.getKey().startsWith(prefix)) fieldMap.put(entry.getKey(), entry.getValue());
+			}
+
+			for (Map.Entry<String, String> entry : this.methodMap.entrySet()) {
+				if (entry.getKey().startsWith(prefix)) methodMap.put(entry.getKey(), entry.getValue());
+			}
+		};
+	}
+
+	void writeTiny(Path file, boolean v2, boolean gzip) throws IOException {
+		OutputStream os = Files.newOutputStream(file);
+		if (gzip) os = new GZIPOutputStream(os);
+
+		try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8))) {
+			writer.write(v2 ? "tiny\t2\t0\tofficial\tnamed\n" : "v1\tofficial\tnamed\n");
+
+			String fieldDesc = "L"+root+";";
+			String methodDesc = "(IL"+root+";)L"+root+";";
+
+			for (int i = 0; i < classes.size(); i++) {
+				String cls = getClassName(i);
+				writer.write(String.format(v2 ? "c\t%s\t%s\n" : "CLASS\t%s\t%s\n", cls, classMap.get(cls)));
+
+				for (int j = 0; j < members; j++) {
+					if (v2) {
+						writer.write(String.format("\tf\t%s\tf%d\tfield%d\n", fieldDesc, j, j));
+						writer.write(String.format("\tm\t%s\tm%d\tmethod%d\n", methodDesc, j, j));
+						writer.write("\t\tp\t1\t\tindex\n\t\tp\t2\t\tvalue\n");
+					} else {
+						writer.write(String.format("FIELD\t%s\t%s\tf%d\tfield%d\n", cls, fieldDesc, j, j));
+						writer.write(String.format("METHOD\t%s\t%s\tm%d\tmethod%d\n", cls, methodDesc, j, j));
+					}
+				}
+			}
+		}
+	}
+
+	void writeJar(Path file) throws IOException {
+		try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(file))) {
+			for (int i = 0; i < classes.size(); i++) {
+				zos.putNextEntry(new ZipEntry(getClassName(i)+".class"));
+				zos.write(classes.get(i));
+				zos.closeEntry();
+			}
+		}
+	}
+
+	static String getClassName(int index) {
+		return String.format("pkg%d/C%d", index / 100, index);
+	}
+
+	final List<byte[]> classes = new ArrayList<>();
+	final Map<String, String> classMap = new HashMap<>();
+	final Map<String, String> fieldMap = new HashMap<>();
+	final Map<String, String> methodMap = new HashMap<>();
+	final Map<String, String[]> localMap = new HashMap<>();
+	final int members;
+	String root;
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Local variable processing for a single method of increasing size, which should scale linearly with the instruction
+ * count.
+ *
+ * <p>The locals are declared at a fixed interval, so their number grows with the method as in large generated code.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class LargeMethodBenchmark {
+	@Param({ "1000", "8000", "64000" })
+	public int instructions;
+
+	@Param({ "16" })
+	public int localInterval;
+
+	@Setup
+	public void setup() {
+		fixtures = Fixtures.createLargeMethod(instructions, localInterval);
+		remapper = TinyRemapper.newRemapper().withMappings(fixtures.getMappingProvider()).threads(1).build();
+		remapper.updateInputs(fixtures.classes, Collections.emptyList());
+		asmRemapper = remapper.getRemapper();
+	}
+
+	@TearDown
+	public void tearDown() {
+		remapper.finish();
+	}
+
+	@Benchmark
+	public byte[] apply() {
+		ClassReader reader = new ClassReader(fixtures.classes.get(0));
+		ClassWriter writer = new ClassWriter(0);
+		reader.accept(new AsmClassRemapper(writer, asmRemapper, false, false, false), ClassReader.EXPAND_FRAMES);
+
+		return writer.toByteArray();
+	}
+
+	private Fixtures fixtures;
+	private TinyRemapper remapper;
+	private AsmRemapper asmRemapper;
+}
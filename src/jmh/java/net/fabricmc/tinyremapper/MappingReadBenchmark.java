@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing Tiny mapping files through {@link TinyUtils#createTinyMappingProvider(Path, String, String)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class MappingReadBenchmark {
+	@Param({ "v1", "v2" })
+	public String format;
+
+	@Param({ "false", "true" })
+	public boolean gzip;
+
+	@Param({ "10000" })
+	public int classes;
+
+	@Setup
+	public void setup() throws IOException {
+		file = Files.createTempFile("mappings", gzip ? ".tiny.gz" : ".tiny");
+		Fixtures.createHierarchy(2, classes - 1, 4).writeTiny(file, format.equals("v2"), gzip);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.delete(file);
+	}
+
+	@Benchmark
+	public void read(Blackhole blackhole) {
+		Map<String, String> classMap = new HashMap<>();
+		Map<String, String> fieldMap = new HashMap<>();
+		Map<String, String> methodMap = new HashMap<>();
+		Map<String, String[]> localMap = new HashMap<>();
+
+		TinyUtils.createTinyMappingProvider(file, "official", "named").load(classMap, fieldMap, methodMap, localMap);
+
+		blackhole.consume(classMap);
+		blackhole.consume(fieldMap);
+		blackhole.consume(methodMap);
+		blackhole.consume(localMap);
+	}
+
+	private Path file;
+}
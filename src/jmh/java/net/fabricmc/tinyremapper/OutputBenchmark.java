@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing classes through {@link OutputConsumerPath} into a directory or a jar, through the zip file system, streamed
+ * or in deterministic mode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class OutputBenchmark {
+	@Param({ "directory", "jar", "streamJar", "deterministicJar" })
+	public String target;
+
+	@Param({ "2000" })
+	public int classes;
+
+	@Setup
+	public void setup() throws IOException {
+		fixtures = Fixtures.createHierarchy(2, classes - 1, 8);
+		dir = Files.createTempDirectory("output");
+	}
+
+	@TearDown(Level.Invocation)
+	public void clean() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).filter(file -> !file.equals(dir)).forEach(file -> {
+				try {
+					Files.delete(file);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.delete(dir);
+	}
+
+	@Benchmark
+	public void write() throws IOException {
+		Path output = target.equals("directory") ? dir.resolve("out") : dir.resolve("out.jar");
+		if (target.equals("directory")) Files.createDirectory(output);
+
+		try (OutputConsumerPath consumer = new OutputConsumerPath.Builder(output)
+				.streamArchive(target.equals("streamJar"))
+				.deterministic(target.equals("deterministicJar"))
+				.build()) {
+			for (int i = 0; i < fixtures.classes.size(); i++) {
+				consumer.accept(Fixtures.getClassName(i), fixtures.classes.get(i));
+			}
+		}
+	}
+
+	private Fixtures fixtures;
+	private Path dir;
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mapping propagation from the root class of deep and wide hierarchies to all subclasses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class PropagateBenchmark {
+	@Param({ "deep", "wide" })
+	public String shape;
+
+	@Param({ "8" })
+	public int members;
+
+	@Param({ "0" })
+	public int threads;
+
+	@Setup
+	public void setup() {
+		fixtures = shape.equals("deep") ? Fixtures.createHierarchy(500, 1, members) : Fixtures.createHierarchy(2, 4999, members);
+	}
+
+	@Setup(Level.Invocation)
+	public void setupInvocation() {
+		remapper = TinyRemapper.newRemapper().withMappings(fixtures.getRootMappingProvider()).threads(threads).build();
+		remapper.updateInputs(fixtures.classes, Collections.emptyList());
+		remapper.loadMappings();
+		remapper.merge();
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDownInvocation() {
+		remapper.finish();
+	}
+
+	@Benchmark
+	public void propagate() {
+		remapper.propagate(null);
+	}
+
+	private Fixtures fixtures;
+	private TinyRemapper remapper;
+}
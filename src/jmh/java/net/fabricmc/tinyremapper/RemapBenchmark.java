@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end remapping of a generated workload, from reading the jars to writing the output jar.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class RemapBenchmark {
+	@Param({ "1000", "10000", "100000" })
+	public int classes;
+
+	@Param({ "v2" })
+	public String format;
+
+	@Setup
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("workload");
+		input = dir.resolve("input.jar");
+		classPath = dir.resolve("classpath.jar");
+		mappings = dir.resolve("mappings.tiny");
+
+		new WorkloadGenerator.Builder().classes(classes).build().generate(input, classPath,
+				format.equals("v1") ? mappings : null, format.equals("v2") ? mappings : null);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> {
+				try {
+					Files.delete(file);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+		}
+	}
+
+	@Benchmark
+	public void remap() throws IOException {
+		TinyRemapper remapper = TinyRemapper.newRemapper()
+				.withMappings(TinyUtils.createTinyMappingProvider(mappings, "official", "named"))
+				.build();
+
+		try (OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(dir.resolve("output.jar")).streamArchive(true).build()) {
+			remapper.readInputs(input);
+			remapper.readClassPath(classPath);
+			outputConsumer.addNonClassFiles(input, NonClassCopyMode.FIX_META_INF, remapper);
+			remapper.apply(outputConsumer);
+		} finally {
+			remapper.finish();
+		}
+	}
+
+	private Path dir;
+	private Path input;
+	private Path classPath;
+	private Path mappings;
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.fabricmc.tinyremapper.MemberInstance.MemberType;
+
+/**
+ * Member resolution from the leaf of a deep hierarchy, with and without the per-class resolution cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ResolveBenchmark {
+	@Param({ "50" })
+	public int depth;
+
+	@Param({ "true", "false" })
+	public boolean cached;
+
+	@Setup
+	public void setup() {
+		Fixtures fixtures = Fixtures.createHierarchy(depth, 1, 4);
+		remapper = TinyRemapper.newRemapper().withMappings(fixtures.getMappingProvider()).threads(1).build();
+		remapper.updateInputs(fixtures.classes, Collections.emptyList());
+		remapper.getRemapper();
+
+		leaf = remapper.classes.get(Fixtures.getClassName(depth - 1));
+		String root = Fixtures.getClassName(0);
+		String desc = "(IL"+root+";)L"+root+";";
+
+		for (int i = 0; i < depth; i++) {
+			methodIds.add(MemberInstance.getMethodId("own"+i, desc)); // declared at increasing distance from the leaf
+		}
+
+		methodIds.add(MemberInstance.getMethodId("missing", desc));
+	}
+
+	@TearDown
+	public void tearDown() {
+		remapper.finish();
+	}
+
+	@Benchmark
+	public void resolve(Blackhole blackhole) {
+		for (String id : methodIds) {
+			if (!cached) leaf.clearResolvedMembers();
+
+			blackhole.consume(leaf.resolve(MemberType.METHOD, id));
+		}
+	}
+
+	@Benchmark
+	public void resolvePartial(Blackhole blackhole) {
+		for (int i = 0; i < depth; i++) {
+			blackhole.consume(leaf.resolvePartial(MemberType.METHOD, "own"+i, "(I"));
+		}
+	}
+
+	private TinyRemapper remapper;
+	private ClassInstance leaf;
+	private final List<String> methodIds = new ArrayList<>();
+}
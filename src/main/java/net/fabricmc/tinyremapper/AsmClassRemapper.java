@@ -19,8 +19,12 @@ package net.fabricmc.tinyremapper;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.lang.model.SourceVersion;
 
@@ -28,6 +32,7 @@ import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
@@ -68,8 +73,18 @@ class AsmClassRemapper extends ClassRemapper {
 
 	@Override
 	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+		methodNode = null;
+		streamLocals = false;
+
 		if (!skipLocalMapping || renameInvalidLocals) {
-			methodNode = new MethodNode(api, access, name, descriptor, signature, exceptions);
+			if (renameInvalidLocals || ((AsmRemapper) remapper).hasMappedArgs(className, name, descriptor)) {
+				methodNode = new MethodNode(api, access, name, descriptor, signature, exceptions);
+			} else { // nothing to synthesize or generate, only buffer if needed by parameters
+				streamLocals = true;
+				methodAccess = access;
+				methodName = name;
+				methodDesc = descriptor;
+			}
 		}
 
 		return super.visitMethod(access, name, descriptor, signature, exceptions);
@@ -82,7 +97,11 @@ class AsmClassRemapper extends ClassRemapper {
 
 	@Override
 	protected MethodVisitor createMethodRemapper(MethodVisitor mv) {
-		return new AsmMethodRemapper(mv, remapper, className, methodNode, checkPackageAccess, skipLocalMapping, renameInvalidLocals);
+		if (streamLocals) {
+			return new AsmMethodRemapper(mv, remapper, className, methodAccess, methodName, methodDesc, checkPackageAccess ? checkedAccesses : null);
+		} else {
+			return new AsmMethodRemapper(mv, remapper, className, methodNode, checkPackageAccess ? checkedAccesses : null, skipLocalMapping, renameInvalidLocals);
+		}
 	}
 
 	@Override
@@ -102,7 +121,12 @@ class AsmClassRemapper extends ClassRemapper {
 	private final boolean checkPackageAccess;
 	private final boolean skipLocalMapping;
 	private final boolean renameInvalidLocals;
+	private final Set<String> checkedAccesses = new HashSet<>(); // owner/id of members already checked for package access from this class
 	private MethodNode methodNode;
+	private boolean streamLocals;
+	private int methodAccess;
+	private String methodName;
+	private String methodDesc;
 
 	private static class AsmFieldRemapper extends FieldRemapper {
 		public AsmFieldRemapper(FieldVisitor fieldVisitor, Remapper remapper) {
@@ -121,15 +145,55 @@ class AsmClassRemapper extends ClassRemapper {
 	}
 
 	private static class AsmMethodRemapper extends MethodRemapper {
-		public AsmMethodRemapper(MethodVisitor methodVisitor, Remapper remapper, String owner, MethodNode methodNode, boolean checkPackageAccess, boolean skipLocalMapping, boolean renameInvalidLocals) {
+		public AsmMethodRemapper(MethodVisitor methodVisitor, Remapper remapper, String owner, MethodNode methodNode, Set<String> checkedAccesses, boolean skipLocalMapping, boolean renameInvalidLocals) {
 			super(methodNode != null ? methodNode : methodVisitor, remapper);
 
 			this.owner = owner;
 			this.methodNode = methodNode;
 			this.output = methodVisitor;
-			this.checkPackageAccess = checkPackageAccess;
+			this.checkedAccesses = checkedAccesses;
 			this.skipLocalMapping = skipLocalMapping;
 			this.renameInvalidLocals = renameInvalidLocals;
+			this.access = 0;
+			this.name = null;
+			this.desc = null;
+			this.streamedLocals = null;
+			this.labelOpIndices = null;
+		}
+
+		/**
+		 * Create a method remapper processing the locals without buffering the method.
+		 *
+		 * <p>This is only suitable for methods without any arg mappings with renameInvalidLocals disabled. The local
+		 * variable table entries are held back until visitMaxs, the method gets buffered after all if it turns out to
+		 * have parameters.
+		 */
+		public AsmMethodRemapper(MethodVisitor methodVisitor, Remapper remapper, String owner, int access, String name, String desc, Set<String> checkedAccesses) {
+			super(methodVisitor, remapper);
+
+			this.owner = owner;
+			this.output = methodVisitor;
+			this.checkedAccesses = checkedAccesses;
+			this.skipLocalMapping = false;
+			this.renameInvalidLocals = false;
+			this.access = access;
+			this.name = name;
+			this.desc = desc;
+			this.streamedLocals = new ArrayList<>();
+			this.labelOpIndices = new IdentityHashMap<>();
+		}
+
+		@Override
+		public void visitParameter(String name, int access) {
+			if (streamedLocals != null) { // parameters may require rewriting or creating lvs, switch to buffering
+				assert methodNode == null;
+
+				methodNode = new MethodNode(api, this.access, this.name, desc, null, null);
+				mv = methodNode;
+				streamedLocals = null;
+			}
+
+			super.visitParameter(name, access);
 		}
 
 		@Override
@@ -152,10 +216,79 @@ class AsmClassRemapper extends ClassRemapper {
 			return AsmClassRemapper.createAsmAnnotationRemapper(descriptor, super.visitParameterAnnotation(parameter, descriptor, visible), remapper);
 		}
 
+		@Override
+		public void visitLabel(Label label) {
+			if (streamedLocals != null) labelOpIndices.put(label, opCount);
+
+			super.visitLabel(label);
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			opCount++;
+			super.visitInsn(opcode);
+		}
+
+		@Override
+		public void visitIntInsn(int opcode, int operand) {
+			opCount++;
+			super.visitIntInsn(opcode, operand);
+		}
+
+		@Override
+		public void visitVarInsn(int opcode, int var) {
+			opCount++;
+			super.visitVarInsn(opcode, var);
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			opCount++;
+			super.visitTypeInsn(opcode, type);
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			opCount++;
+			super.visitJumpInsn(opcode, label);
+		}
+
+		@Override
+		public void visitLdcInsn(Object value) {
+			opCount++;
+			super.visitLdcInsn(value);
+		}
+
+		@Override
+		public void visitIincInsn(int var, int increment) {
+			opCount++;
+			super.visitIincInsn(var, increment);
+		}
+
+		@Override
+		public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+			opCount++;
+			super.visitTableSwitchInsn(min, max, dflt, labels);
+		}
+
+		@Override
+		public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+			opCount++;
+			super.visitLookupSwitchInsn(dflt, keys, labels);
+		}
+
+		@Override
+		public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+			opCount++;
+			super.visitMultiANewArrayInsn(descriptor, numDimensions);
+		}
+
 		@Override
 		public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
-			if (checkPackageAccess) {
-				((AsmRemapper) remapper).checkPackageAccess(this.owner, owner, name, descriptor, MemberType.FIELD);
+			opCount++;
+
+			if (checkedAccesses != null) {
+				checkPackageAccess(owner, name, descriptor, MemberType.FIELD);
 			}
 
 			super.visitFieldInsn(opcode, owner, name, descriptor);
@@ -163,15 +296,25 @@ class AsmClassRemapper extends ClassRemapper {
 
 		@Override
 		public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
-			if (checkPackageAccess) {
-				((AsmRemapper) remapper).checkPackageAccess(this.owner, owner, name, descriptor, MemberType.METHOD);
+			opCount++;
+
+			if (checkedAccesses != null) {
+				checkPackageAccess(owner, name, descriptor, MemberType.METHOD);
 			}
 
 			super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
 		}
 
+		private void checkPackageAccess(String owner, String name, String descriptor, MemberType type) {
+			if (checkedAccesses.add(owner+"/"+MemberInstance.getId(type, name, descriptor, false))) { // only check the first access per class
+				((AsmRemapper) remapper).checkPackageAccess(this.owner, owner, name, descriptor, type);
+			}
+		}
+
 		@Override
 		public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+			opCount++;
+
 			Handle implemented = getLambdaImplementedMethod(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
 
 			if (implemented != null) {
@@ -211,6 +354,24 @@ class AsmClassRemapper extends ClassRemapper {
 					&& !bsm.isInterface();
 		}
 
+		@Override
+		public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+			if (streamedLocals != null) {
+				streamedLocals.add(new LocalVariableNode(name, descriptor, signature, new LabelNode(start), new LabelNode(end), index));
+			} else {
+				super.visitLocalVariable(name, descriptor, signature, start, end, index);
+			}
+		}
+
+		@Override
+		public void visitMaxs(int maxStack, int maxLocals) {
+			if (streamedLocals != null) {
+				processStreamedLocals();
+			}
+
+			super.visitMaxs(maxStack, maxLocals);
+		}
+
 		@Override
 		public void visitEnd() {
 			if (methodNode != null) {
@@ -226,11 +387,54 @@ class AsmClassRemapper extends ClassRemapper {
 			}
 		}
 
+		/**
+		 * Streaming equivalent of processLocals for methods without parameters or arg mappings.
+		 *
+		 * <p>The arg names can only originate from the lvs themselves, so there's nothing to create.
+		 */
+		private void processStreamedLocals() {
+			final boolean isStatic = (access & Opcodes.ACC_STATIC) != 0;
+			final Type[] argTypes = Type.getArgumentTypes(desc);
+			final int argLvSize = getLvIndex(argTypes.length, isStatic, argTypes);
+			final String[] args = new String[argTypes.length];
+
+			// grab arg names from lvs
+			for (LocalVariableNode lv : streamedLocals) {
+				if (lv.index < argLvSize && (isStatic || lv.index != 0)) {
+					int asmIndex = getAsmIndex(lv.index, isStatic, argTypes);
+					String existingName = args[asmIndex];
+
+					if (existingName == null || !isValidJavaIdentifier(existingName) && isValidJavaIdentifier(lv.name)) { // replace if missing or better
+						args[asmIndex] = lv.name;
+					}
+				}
+			}
+
+			// update lvs, remap vars
+			for (int i = 0; i < streamedLocals.size(); i++) {
+				LocalVariableNode lv = streamedLocals.get(i);
+
+				if (!isStatic && lv.index == 0) { // this ref
+					lv.name = "this";
+				} else if (lv.index < argLvSize) { // arg
+					lv.name = args[getAsmIndex(lv.index, isStatic, argTypes)];
+				} else { // var
+					Integer startOpIdx = labelOpIndices.get(lv.start.getLabel());
+					lv.name = ((AsmRemapper) remapper).mapMethodVar(owner, name, desc, lv.index, startOpIdx != null ? startOpIdx : 0, i, lv.name);
+				}
+
+				super.visitLocalVariable(lv.name, lv.desc, lv.signature, lv.start.getLabel(), lv.end.getLabel(), lv.index);
+			}
+
+			streamedLocals.clear();
+		}
+
 		private void processLocals() {
 			final boolean isStatic = (methodNode.access & Opcodes.ACC_STATIC) != 0;
 			final Type[] argTypes = Type.getArgumentTypes(methodNode.desc);
 			final int argLvSize = getLvIndex(argTypes.length, isStatic, argTypes);
 			final String[] args = new String[argTypes.length];
+			int[] startOpIndices = null;
 
 			// grab arg names from parameters
 			if (methodNode.parameters != null && methodNode.parameters.size() == args.length) {
@@ -259,12 +463,8 @@ class AsmClassRemapper extends ClassRemapper {
 						// remap+fix later
 					} else { // var
 						if (!skipLocalMapping) {
-							int startOpIdx = 0;
-							AbstractInsnNode start = lv.start;
-
-							while ((start = start.getPrevious()) != null) {
-								if (start.getOpcode() >= 0) startOpIdx++;
-							}
+							if (startOpIndices == null) startOpIndices = getStartOpIndices();
+							int startOpIdx = startOpIndices[methodNode.instructions.indexOf(lv.start)];
 
 							lv.name = ((AsmRemapper) remapper).mapMethodVar(owner, methodNode.name, methodNode.desc, lv.index, startOpIdx, i, lv.name);
 
@@ -374,6 +574,22 @@ class AsmClassRemapper extends ClassRemapper {
 			}
 		}
 
+		/**
+		 * Determine the number of real instructions preceding each node in the method's instruction list.
+		 */
+		private int[] getStartOpIndices() {
+			int[] ret = new int[methodNode.instructions.size()];
+			int opIdx = 0;
+			int i = 0;
+
+			for (Iterator<AbstractInsnNode> it = methodNode.instructions.iterator(); it.hasNext(); ) {
+				ret[i++] = opIdx;
+				if (it.next().getOpcode() >= 0) opIdx++;
+			}
+
+			return ret;
+		}
+
 		private static int getLvIndex(int asmIndex, boolean isStatic, Type[] argTypes) {
 			int ret = 0;
 
@@ -498,10 +714,16 @@ class AsmClassRemapper extends ClassRemapper {
 		}
 
 		private final String owner;
-		private final MethodNode methodNode;
+		private MethodNode methodNode;
 		private final MethodVisitor output;
+		private final int access;
+		private final String name;
+		private final String desc;
+		private List<LocalVariableNode> streamedLocals;
+		private final Map<Label, Integer> labelOpIndices;
+		private int opCount;
 		private final Map<String, Integer> nameCounts = new HashMap<>();
-		private final boolean checkPackageAccess;
+		private final Set<String> checkedAccesses;
 		private final boolean skipLocalMapping;
 		private final boolean renameInvalidLocals;
 	}
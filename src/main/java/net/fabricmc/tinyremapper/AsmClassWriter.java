@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * Class writer computing frames from the remapper's class hierarchy instead of loading classes.
+ *
+ * <p>The names passed to {@link #getCommonSuperClass} are in the mapped namespace, they get looked up through
+ * {@link TinyRemapper#getMappedClass}. Only classes outside of the analyzed inputs and class path are delegated to
+ * the class loading based default implementation, which fails if they can't be loaded either. Results are memoized in
+ * the TinyRemapper instance and shared across the apply threads.
+ */
+class AsmClassWriter extends ClassWriter {
+	public AsmClassWriter(int flags, TinyRemapper remapper) {
+		super(flags);
+
+		this.remapper = remapper;
+	}
+
+	@Override
+	protected String getCommonSuperClass(String type1, String type2) {
+		if (type1.equals(type2)) return type1;
+
+		String key = type1.compareTo(type2) < 0 ? type1+";"+type2 : type2+";"+type1;
+		String ret = remapper.commonSuperClasses.get(key);
+
+		if (ret == null) {
+			ret = computeCommonSuperClass(type1, type2);
+			remapper.commonSuperClasses.putIfAbsent(key, ret);
+		}
+
+		return ret;
+	}
+
+	private String computeCommonSuperClass(String type1, String type2) {
+		ClassInstance cls1 = remapper.getMappedClass(type1);
+		ClassInstance cls2 = remapper.getMappedClass(type2);
+
+		if (cls1 != null && cls1.isInterface() || cls2 != null && cls2.isInterface()) {
+			return objectClassName; // same as ClassWriter, the verifier treats interfaces like Object
+		}
+
+		// collect the super classes of type1 until leaving the known hierarchy
+
+		Set<String> supers1 = new HashSet<>();
+		String end1 = type1;
+
+		while (supers1.add(end1) && cls1 != null && cls1.getSuperName() != null) { // add check guards against cycles
+			end1 = mapSuperName(cls1);
+			cls1 = remapper.getMappedClass(end1);
+		}
+
+		// walk up from type2 until hitting a class from type1's chain
+
+		Set<String> supers2 = new HashSet<>();
+		String end2 = type2;
+
+		while (supers2.add(end2)) {
+			if (supers1.contains(end2)) return end2;
+			if (cls2 == null || cls2.getSuperName() == null) break;
+
+			end2 = mapSuperName(cls2);
+			cls2 = remapper.getMappedClass(end2);
+		}
+
+		// both chains left the known hierarchy (e.g. into the jdk) -> resolve the remainder via class loading
+
+		if (cls1 == null && cls2 == null) {
+			try {
+				return super.getCommonSuperClass(end1, end2);
+			} catch (TypeNotPresentException e) {
+				// like ClassWriter, guessing would produce frames failing verification
+				throw new IllegalStateException("can't compute frames: common super class of "+type1+" and "+type2+" unknown, "
+						+e.typeName()+" is missing from the class path", e);
+			}
+		}
+
+		return objectClassName;
+	}
+
+	private String mapSuperName(ClassInstance cls) {
+		return remapper.remapper.map(cls.getSuperName());
+	}
+
+	private static final String objectClassName = "java/lang/Object";
+
+	private final TinyRemapper remapper;
+}
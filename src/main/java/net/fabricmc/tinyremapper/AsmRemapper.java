@@ -17,7 +17,12 @@
 
 package net.fabricmc.tinyremapper;
 
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
 
 import org.objectweb.asm.commons.Remapper;
 
@@ -36,6 +41,52 @@ class AsmRemapper extends Remapper {
 		return remapper.extraRemapper != null ? remapper.extraRemapper.map(typeName) : typeName;
 	}
 
+	@Override
+	public String mapDesc(String descriptor) {
+		if (descriptor.indexOf('L') < 0) return descriptor; // only primitives
+
+		return descCache.get(descriptor, super::mapDesc);
+	}
+
+	@Override
+	public String mapMethodDesc(String methodDescriptor) {
+		if (methodDescriptor.indexOf('L') < 0) return methodDescriptor; // only primitives
+
+		return methodDescCache.get(methodDescriptor, super::mapMethodDesc);
+	}
+
+	@Override
+	public String mapSignature(String signature, boolean typeSignature) {
+		if (signature == null) return null;
+
+		if (typeSignature) {
+			return typeSignatureCache.get(signature, sig -> super.mapSignature(sig, true));
+		} else {
+			return signatureCache.get(signature, sig -> super.mapSignature(sig, false));
+		}
+	}
+
+	/**
+	 * Get the number of descriptor and signature lookups answered from the cache.
+	 */
+	public long getDescCacheHits() {
+		return cacheHits.sum();
+	}
+
+	/**
+	 * Get the number of descriptor and signature lookups that had to be computed.
+	 */
+	public long getDescCacheMisses() {
+		return cacheMisses.sum();
+	}
+
+	void clearCaches() {
+		descCache.clear();
+		methodDescCache.clear();
+		signatureCache.clear();
+		typeSignatureCache.clear();
+	}
+
 	@Override
 	public String mapFieldName(String owner, String name, String desc) {
 		ClassInstance cls = getClass(owner);
@@ -93,10 +144,32 @@ class AsmRemapper extends Remapper {
 	}
 
 	private String getLocalVariable(String owner, String method, int index) {
-		String[] locals = remapper.localMap.get(mapType(owner) + '/' + method);
+		String[] locals = getLocalVariables(owner, method);
 		return locals != null && index < locals.length ? locals[index] : null;
 	}
 
+	private String[] getLocalVariables(String owner, String method) {
+		return remapper.localMap.get(mapType(owner) + '/' + method);
+	}
+
+	/**
+	 * Determine whether mapMethodArg may yield a mapped name for any arg of the specified method.
+	 */
+	public boolean hasMappedArgs(String methodOwner, String methodName, String methodDesc) {
+		if (remapper.localMap.isEmpty()) return false;
+
+		String methodId = MemberInstance.getMethodId(methodName, methodDesc);
+		if (getLocalVariables(methodOwner, methodId) != null) return true;
+
+		ClassInstance cls = getClass(methodOwner);
+		if (cls == null) return false;
+
+		MemberInstance originatingMethod = cls.resolve(MemberType.METHOD, methodId);
+
+		return originatingMethod != null
+				&& getLocalVariables(originatingMethod.newNameOriginatingCls, MemberInstance.getMethodId(originatingMethod.name, originatingMethod.desc)) != null;
+	}
+
 	public String mapMethodArg(String methodOwner, String methodName, String methodDesc, int lvIndex, String name) {
 		String newName = getLocalVariable(methodOwner, MemberInstance.getMethodId(methodName, methodDesc), lvIndex);
 		if (newName != null) return newName;
@@ -113,6 +186,14 @@ class AsmRemapper extends Remapper {
 	}
 
 	public String suggestLocalName(String type, boolean plural) {
+		String ret = querySuggestLocalName(type, plural);
+		List<String[]> suggestions = remapper.localNameSuggestions.get();
+		if (suggestions != null) suggestions.add(new String[] { type, Boolean.toString(plural), ret });
+
+		return ret;
+	}
+
+	String querySuggestLocalName(String type, boolean plural) {
 		for (IMappingProvider provider : remapper.mappingProviders) {
 			String name = provider.suggestLocalName(type, plural);
 			if (name != null) return name;
@@ -126,7 +207,7 @@ class AsmRemapper extends Remapper {
 	}
 
 	/**
-	 * Check if a class can access a specific member, printing and recording failure for later.
+	 * Check if a class can access a specific member, recording failure and its description for later.
 	 */
 	public void checkPackageAccess(String accessingOwner, String owner, String name, String desc, MemberType type) {
 		ClassInstance cls = getClass(owner);
@@ -223,9 +304,9 @@ class AsmRemapper extends Remapper {
 			}
 		}
 
-		System.out.printf("Invalid access from %s to %s after remapping.%n",
+		remapper.invalidAccesses.add(String.format("Invalid access from %s to %s after remapping.",
 				mappedAccessor,
-				inaccessible);
+				inaccessible));
 
 		if (!clsAccessible) remapper.classesToMakePublic.add(cls);
 		if (!memberAccessible) remapper.membersToMakePublic.add(member);
@@ -256,5 +337,42 @@ class AsmRemapper extends Remapper {
 		return remapper.classes.get(owner);
 	}
 
+	/**
+	 * Concurrent cache from original to remapped descriptor or signature.
+	 *
+	 * <p>Entries only get added while the cache is below maxCacheSize, which is enough to capture the commonly used
+	 * descriptors without growing with the input size.
+	 */
+	private final class Cache {
+		String get(String key, UnaryOperator<String> mapper) {
+			String ret = map.get(key);
+
+			if (ret != null) {
+				cacheHits.increment();
+				return ret;
+			}
+
+			cacheMisses.increment();
+			ret = mapper.apply(key);
+			if (map.size() < maxCacheSize) map.putIfAbsent(key, ret);
+
+			return ret;
+		}
+
+		void clear() {
+			map.clear();
+		}
+
+		private final Map<String, String> map = new ConcurrentHashMap<>();
+	}
+
+	private static final int maxCacheSize = 1 << 16;
+
 	private final TinyRemapper remapper;
+	private final Cache descCache = new Cache();
+	private final Cache methodDescCache = new Cache();
+	private final Cache signatureCache = new Cache();
+	private final Cache typeSignatureCache = new Cache();
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
 }
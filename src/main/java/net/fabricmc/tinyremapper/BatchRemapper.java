@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Remaps many inputs in one run, sharing the mappings and class path between them.
+ *
+ * <p>The class path is analyzed once into a {@link ClassPathSnapshot} shared by all workers. Each worker creates one
+ * remapper attached to it and then processes inputs one after another like {@link WarmRemapper}. Every input only
+ * sees its own classes and the class path. The remapper factory should use a {@link CachedMappingProvider} to parse
+ * the mappings only once.
+ */
+public final class BatchRemapper {
+	public static class Builder {
+		public Builder(Supplier<TinyRemapper> remapperFactory) {
+			this.remapperFactory = remapperFactory;
+		}
+
+		public Builder classPath(Path... paths) {
+			classPath = paths;
+			return this;
+		}
+
+		/**
+		 * Use an already analyzed class path, e.g. shared with other batches, instead of the class path paths.
+		 */
+		public Builder classPath(ClassPathSnapshot snapshot) {
+			classPathSnapshot = snapshot;
+			return this;
+		}
+
+		/**
+		 * Number of inputs to process concurrently, each using its own remapper instance.
+		 */
+		public Builder parallelism(int value) {
+			parallelism = value;
+			return this;
+		}
+
+		public Builder nonClassCopyMode(NonClassCopyMode value) {
+			ncCopyMode = value;
+			return this;
+		}
+
+		public Builder deterministic(boolean value) {
+			deterministic = value;
+			return this;
+		}
+
+		public BatchRemapper build() {
+			return new BatchRemapper(remapperFactory, classPath, classPathSnapshot, parallelism > 0 ? parallelism : getDefaultParallelism(), ncCopyMode, deterministic);
+		}
+
+		private final Supplier<TinyRemapper> remapperFactory;
+		private Path[] classPath = new Path[0];
+		private ClassPathSnapshot classPathSnapshot;
+		private int parallelism;
+		private NonClassCopyMode ncCopyMode = NonClassCopyMode.FIX_META_INF;
+		private boolean deterministic = false;
+	}
+
+	public static final class Job {
+		public Job(Path input, Path output) {
+			this.input = input;
+			this.output = output;
+		}
+
+		public Path getInput() {
+			return input;
+		}
+
+		public Path getOutput() {
+			return output;
+		}
+
+		private final Path input;
+		private final Path output;
+	}
+
+	public static final class Result {
+		Result(Job job, int classCount, long timeNanos, Throwable error) {
+			this.job = job;
+			this.classCount = classCount;
+			this.timeNanos = timeNanos;
+			this.error = error;
+		}
+
+		public Job getJob() {
+			return job;
+		}
+
+		public int getClassCount() {
+			return classCount;
+		}
+
+		public long getTimeNanos() {
+			return timeNanos;
+		}
+
+		/**
+		 * Failure cause, null if the job succeeded.
+		 *
+		 * <p>Conflicts between the mappings and the job's input result in a {@link MappingConflictException}, the other
+		 * jobs aren't affected by them.
+		 */
+		public Throwable getError() {
+			return error;
+		}
+
+		private final Job job;
+		private final int classCount;
+		private final long timeNanos;
+		private final Throwable error;
+	}
+
+	private BatchRemapper(Supplier<TinyRemapper> remapperFactory, Path[] classPath, ClassPathSnapshot classPathSnapshot, int parallelism, NonClassCopyMode ncCopyMode, boolean deterministic) {
+		this.remapperFactory = remapperFactory;
+		this.classPath = classPath;
+		this.classPathSnapshot = classPathSnapshot;
+		this.parallelism = parallelism;
+		this.ncCopyMode = ncCopyMode;
+		this.deterministic = deterministic;
+	}
+
+	static int getDefaultParallelism() {
+		return Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+	}
+
+	/**
+	 * Process all jobs, failures of individual jobs are reported in their result instead of aborting the batch.
+	 *
+	 * @return Results in job order.
+	 */
+	public List<Result> run(List<Job> jobs) {
+		ClassPathSnapshot classPath = getClassPath();
+		Result[] results = new Result[jobs.size()];
+		AtomicInteger nextJob = new AtomicInteger();
+		int workers = Math.min(parallelism, jobs.size());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(workers, 1));
+		List<Future<?>> futures = new ArrayList<>(workers);
+
+		try {
+			for (int i = 0; i < workers; i++) {
+				futures.add(executor.submit(() -> {
+					WarmRemapper remapper = null;
+					int idx;
+
+					try {
+						while ((idx = nextJob.getAndIncrement()) < results.length) {
+							if (remapper == null) {
+								remapper = new WarmRemapper(remapperFactory.get());
+								remapper.remapper.attachClassPath(classPath);
+							}
+
+							results[idx] = run(remapper, jobs.get(idx));
+
+							if (results[idx].error != null) { // state may be inconsistent
+								remapper.remapper.finish();
+								remapper = null;
+							}
+						}
+					} finally {
+						if (remapper != null) remapper.remapper.finish();
+					}
+				}));
+			}
+
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		} finally {
+			executor.shutdown();
+		}
+
+		List<Result> ret = new ArrayList<>(results.length);
+		Collections.addAll(ret, results);
+
+		return ret;
+	}
+
+	private synchronized ClassPathSnapshot getClassPath() {
+		if (classPathSnapshot == null) {
+			try {
+				classPathSnapshot = ClassPathSnapshot.create(classPath);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		return classPathSnapshot;
+	}
+
+	private Result run(WarmRemapper remapper, Job job) {
+		long startTime = System.nanoTime();
+		int classCount = 0;
+		Throwable error = null;
+
+		try (OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(job.output).streamArchive(true).deterministic(deterministic).build()) {
+			classCount = remapper.remap(job.input, outputConsumer, ncCopyMode);
+		} catch (Throwable t) { // e.g. mapping conflicts specific to this input, the other jobs continue
+			error = t;
+		}
+
+		return new Result(job, classCount, System.nanoTime() - startTime, error);
+	}
+
+	private final Supplier<TinyRemapper> remapperFactory;
+	private final Path[] classPath;
+	private ClassPathSnapshot classPathSnapshot;
+	private final int parallelism;
+	private final NonClassCopyMode ncCopyMode;
+	private final boolean deterministic;
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mapping provider loading another provider's mappings once and serving copies of them afterwards.
+ *
+ * <p>This avoids parsing the same mappings again for every remapper instance, e.g. in batch or daemon mode.
+ */
+public final class CachedMappingProvider implements IMappingProvider {
+	public CachedMappingProvider(IMappingProvider source) {
+		this.source = source;
+
+		source.load(classMap, fieldMap, methodMap, localMap);
+	}
+
+	@Override
+	public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap) {
+		load(classMap, fieldMap, methodMap, new HashMap<>());
+	}
+
+	@Override
+	public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap, Map<String, String[]> localMap) {
+		classMap.putAll(this.classMap);
+		fieldMap.putAll(this.fieldMap);
+		methodMap.putAll(this.methodMap);
+		localMap.putAll(this.localMap);
+	}
+
+	@Override
+	public String suggestLocalName(String type, boolean plural) {
+		return source.suggestLocalName(type, plural);
+	}
+
+	private final IMappingProvider source;
+	private final Map<String, String> classMap = new HashMap<>();
+	private final Map<String, String> fieldMap = new HashMap<>();
+	private final Map<String, String> methodMap = new HashMap<>();
+	private final Map<String, String[]> localMap = new HashMap<>();
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Flag for cooperatively cancelling a remapper's work, see {@link TinyRemapper.Builder#cancellationToken}.
+ *
+ * <p>The remapper's tasks check the token between classes and mapping entries, the running operation then fails with a
+ * {@link CancellationException}. The remapper state is undefined afterwards, only {@link TinyRemapper#finish()} may be
+ * invoked. A token may be shared by multiple remappers to cancel them together.
+ */
+public final class CancellationToken {
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	void check() {
+		if (cancelled) throw new CancellationException("remapping cancelled");
+	}
+
+	private volatile boolean cancelled;
+}
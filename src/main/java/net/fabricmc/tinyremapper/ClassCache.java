@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of remapped classes, content addressed by a key derived from the class and the remapping state.
+ *
+ * <p>Each cached class is stored in its own file named after the hex encoded key. Entries get written atomically and
+ * lookups fall back to the directory, so multiple processes may share it. The least recently used entries are evicted
+ * by {@link #trim()} once the total size exceeds the limit, the file modification time tracks the last use across runs.
+ *
+ * <p>Cache failures are not fatal, an unreadable entry is treated as a miss and a failed write is skipped.
+ */
+public final class ClassCache {
+	public ClassCache(Path dir, long maxSize) throws IOException {
+		this.dir = dir;
+		this.maxSize = maxSize;
+
+		Files.createDirectories(dir);
+
+		try (Stream<Path> files = Files.list(dir)) {
+			files.forEach(file -> {
+				String name = file.getFileName().toString();
+				if (name.endsWith(tmpSuffix)) return;
+
+				try {
+					BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+					if (!attrs.isRegularFile()) return;
+
+					entries.put(name, new Entry(attrs.size(), attrs.lastModifiedTime().toMillis()));
+					size.addAndGet(attrs.size());
+				} catch (IOException e) {
+					// removed concurrently
+				}
+			});
+		}
+	}
+
+	/**
+	 * Get the cached data for a key.
+	 *
+	 * <p>Keys missing from the in-memory index are still looked up on disk, another process sharing the directory may
+	 * have stored them since the index was built.
+	 *
+	 * @return Cached data or null if not present.
+	 */
+	byte[] get(byte[] key) {
+		String name = toHex(key);
+		Entry entry = entries.get(name);
+		Path file = dir.resolve(name);
+
+		try {
+			byte[] ret = Files.readAllBytes(file);
+			long time = System.currentTimeMillis();
+			Files.setLastModifiedTime(file, FileTime.fromMillis(time));
+
+			if (entry != null) {
+				entry.lastUsed = time;
+			} else if (entries.putIfAbsent(name, new Entry(ret.length, time)) == null) { // stored by another process
+				size.addAndGet(ret.length);
+			}
+
+			hits.increment();
+
+			return ret;
+		} catch (NoSuchFileException e) {
+			if (entry != null && entries.remove(name, entry)) size.addAndGet(-entry.size); // evicted by another process
+		} catch (IOException e) {
+			System.out.printf("can't read cached class %s: %s\n", name, e);
+		}
+
+		misses.increment();
+
+		return null;
+	}
+
+	/**
+	 * Count data returned by the last {@link #get} as a miss after the caller found it to be outdated.
+	 */
+	void rejectHit() {
+		hits.decrement();
+		misses.increment();
+	}
+
+	void put(byte[] key, byte[] data) {
+		String name = toHex(key);
+		Path tmp = null;
+
+		try {
+			tmp = Files.createTempFile(dir, name, tmpSuffix);
+			Files.write(tmp, data);
+			Files.move(tmp, dir.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			tmp = null;
+
+			Entry prev = entries.put(name, new Entry(data.length, System.currentTimeMillis()));
+			size.addAndGet(prev != null ? data.length - prev.size : data.length);
+			stores.increment();
+		} catch (IOException e) {
+			System.out.printf("can't store cached class %s: %s\n", name, e);
+		} finally {
+			if (tmp != null) {
+				try {
+					Files.deleteIfExists(tmp);
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Evict the least recently used entries until the cache size is within the limit.
+	 */
+	public synchronized void trim() {
+		if (size.get() <= maxSize) return;
+
+		List<Map.Entry<String, Entry>> sorted = new ArrayList<>(entries.entrySet());
+		sorted.sort(Comparator.comparingLong(e -> e.getValue().lastUsed));
+
+		for (Map.Entry<String, Entry> e : sorted) {
+			if (size.get() <= maxSize) break;
+
+			try {
+				Files.deleteIfExists(dir.resolve(e.getKey()));
+			} catch (IOException ex) {
+				continue;
+			}
+
+			if (entries.remove(e.getKey(), e.getValue())) {
+				size.addAndGet(-e.getValue().size);
+				evictions.increment();
+			}
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public double getHitRate() {
+		long hits = getHits();
+		long total = hits + getMisses();
+
+		return total > 0 ? (double) hits / total : 0;
+	}
+
+	public long getStores() {
+		return stores.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getSize() {
+		return size.get();
+	}
+
+	private static String toHex(byte[] data) {
+		char[] ret = new char[data.length * 2];
+
+		for (int i = 0; i < data.length; i++) {
+			ret[i * 2] = hexDigits[(data[i] >>> 4) & 0xf];
+			ret[i * 2 + 1] = hexDigits[data[i] & 0xf];
+		}
+
+		return new String(ret);
+	}
+
+	private static final class Entry {
+		Entry(long size, long lastUsed) {
+			this.size = size;
+			this.lastUsed = lastUsed;
+		}
+
+		final long size;
+		volatile long lastUsed;
+	}
+
+	private static final String tmpSuffix = ".tmp";
+	private static final char[] hexDigits = "0123456789abcdef".toCharArray();
+
+	private final Path dir;
+	private final long maxSize;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final AtomicLong size = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder stores = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+}
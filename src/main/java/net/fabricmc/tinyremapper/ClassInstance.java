@@ -33,6 +33,7 @@ import java.util.concurrent.ConcurrentMap;
 import org.objectweb.asm.Opcodes;
 
 import net.fabricmc.tinyremapper.MemberInstance.MemberType;
+import net.fabricmc.tinyremapper.RemapMetrics.Counter;
 import net.fabricmc.tinyremapper.TinyRemapper.Direction;
 
 public final class ClassInstance {
@@ -62,6 +63,10 @@ public final class ClassInstance {
 		return superName;
 	}
 
+	int getAccess() {
+		return access;
+	}
+
 	public boolean isInterface() {
 		return (access & Opcodes.ACC_INTERFACE) != 0;
 	}
@@ -163,6 +168,10 @@ public final class ClassInstance {
 		}
 	}
 
+	void clearResolvedMembers() {
+		resolvedMembers.clear();
+	}
+
 	public MemberInstance resolve(MemberType type, String id) {
 		MemberInstance member = getMember(type, id);
 		if (member != null) return member;
@@ -170,9 +179,15 @@ public final class ClassInstance {
 		// get from cache
 		member = resolvedMembers.get(id);
 
-		if (member == null) {
+		if (member != null) {
+			context.metrics.increment(Counter.RESOLVE_CACHE_HITS);
+		} else {
+			context.metrics.increment(Counter.RESOLVE_CACHE_MISSES);
+			Object event = FlightRecorderEvents.beginResolve();
+
 			// compute
 			member = resolve0(type, id);
+			FlightRecorderEvents.endResolve(event, name, id);
 			assert member != null;
 
 			// put in cache
@@ -380,6 +395,7 @@ public final class ClassInstance {
 	final boolean isInput;
 	final Path srcPath;
 	final byte[] data;
+	long readOrder; // decides between duplicates read from the same kind of source, see TinyRemapper.registerClass
 	private final Map<String, MemberInstance> members = new HashMap<>(); // methods and fields are distinct due to their different desc separators
 	private final ConcurrentMap<String, MemberInstance> resolvedMembers = new ConcurrentHashMap<>();
 	final Set<ClassInstance> parents = new HashSet<>();
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import net.fabricmc.tinyremapper.MemberInstance.MemberType;
+
+/**
+ * Immutable analysis result of class path entries, shareable between any number of {@link TinyRemapper} instances.
+ *
+ * <p>A remapper attaching a snapshot through {@link TinyRemapper#attachClassPath} only creates its own class
+ * instances for the snapshot classes relevant to its inputs: the classes they reference, the owners of mappings, all
+ * of their super types and the sub types a method mapping may propagate through. Hierarchy links and propagation
+ * results stay in those per-remapper instances, the snapshot itself never changes and is safe to use concurrently.
+ */
+public final class ClassPathSnapshot {
+	/**
+	 * Read and analyze class path entries, later entries take precedence for duplicate classes.
+	 */
+	public static ClassPathSnapshot create(Path... classPath) throws IOException {
+		List<CompletableFuture<List<ClassInfo>>> futures = new ArrayList<>(classPath.length);
+
+		for (Path path : classPath) {
+			futures.add(CompletableFuture.supplyAsync(() -> {
+				try {
+					return read(path);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}));
+		}
+
+		Map<String, ClassInfo> classes = new HashMap<>();
+
+		try {
+			for (CompletableFuture<List<ClassInfo>> future : futures) {
+				for (ClassInfo cls : future.join()) {
+					classes.put(cls.name, cls);
+				}
+			}
+		} catch (RuntimeException e) {
+			if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+			throw e;
+		}
+
+		return new ClassPathSnapshot(classes);
+	}
+
+	private ClassPathSnapshot(Map<String, ClassInfo> classes) {
+		this.classes = classes;
+
+		for (ClassInfo cls : classes.values()) {
+			for (int i = cls.fieldCount; i < cls.memberNames.length; i++) {
+				if ((cls.memberAccess[i] & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) != 0) continue;
+
+				String id = MemberInstance.getMethodId(cls.memberNames[i], cls.memberDescs[i]);
+				virtualMethodDeclarers.computeIfAbsent(id, ignore -> new ArrayList<>()).add(cls);
+			}
+		}
+	}
+
+	public int size() {
+		return classes.size();
+	}
+
+	public boolean contains(String className) {
+		return classes.containsKey(className);
+	}
+
+	ClassInfo get(String className) {
+		return classes.get(className);
+	}
+
+	/**
+	 * Get the classes declaring a virtual method, the only places where propagating its mapping may change direction.
+	 */
+	List<ClassInfo> getVirtualMethodDeclarers(String methodId) {
+		return virtualMethodDeclarers.getOrDefault(methodId, Collections.emptyList());
+	}
+
+	private static List<ClassInfo> read(Path path) throws IOException {
+		List<ClassInfo> ret = new ArrayList<>();
+
+		if (Files.isDirectory(path)) {
+			try (Stream<Path> files = Files.walk(path)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					if (file.toString().endsWith(".class")) {
+						ClassInfo cls = analyze(path, Files.readAllBytes(file));
+						if (cls != null) ret.add(cls);
+					}
+				}
+			}
+		} else if (path.toString().endsWith(".class")) {
+			ClassInfo cls = analyze(path, Files.readAllBytes(path));
+			if (cls != null) ret.add(cls);
+		} else {
+			try (ZipReader reader = new ZipReader(path)) {
+				for (ZipReader.Entry entry : reader.getEntries()) {
+					if (entry.name.endsWith(".class")) {
+						ClassInfo cls = analyze(path, reader.read(entry));
+						if (cls != null) ret.add(cls);
+					}
+				}
+			}
+		}
+
+		return ret;
+	}
+
+	private static ClassInfo analyze(Path srcPath, byte[] data) {
+		ClassReader reader = new ClassReader(data);
+		if ((reader.getAccess() & Opcodes.ACC_MODULE) != 0) return null; // special attribute for module-info.class, can't be a regular class
+
+		List<String> fieldNames = new ArrayList<>();
+		List<String> fieldDescs = new ArrayList<>();
+		List<Integer> fieldAccess = new ArrayList<>();
+		List<String> methodNames = new ArrayList<>();
+		List<String> methodDescs = new ArrayList<>();
+		List<Integer> methodAccess = new ArrayList<>();
+
+		reader.accept(new ClassVisitor(Opcodes.ASM7) {
+			@Override
+			public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+				fieldNames.add(name);
+				fieldDescs.add(desc);
+				fieldAccess.add(access);
+
+				return null;
+			}
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+				methodNames.add(name);
+				methodDescs.add(desc);
+				methodAccess.add(access);
+
+				return null;
+			}
+		}, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES | ClassReader.SKIP_CODE);
+
+		int memberCount = fieldNames.size() + methodNames.size();
+		String[] memberNames = new String[memberCount];
+		String[] memberDescs = new String[memberCount];
+		int[] memberAccess = new int[memberCount];
+		int fieldCount = fieldNames.size();
+
+		for (int i = 0; i < memberCount; i++) {
+			boolean isField = i < fieldCount;
+			int idx = isField ? i : i - fieldCount;
+			memberNames[i] = (isField ? fieldNames : methodNames).get(idx);
+			memberDescs[i] = (isField ? fieldDescs : methodDescs).get(idx);
+			memberAccess[i] = (isField ? fieldAccess : methodAccess).get(idx);
+		}
+
+		return new ClassInfo(reader.getClassName(), reader.getSuperName(), reader.getAccess(), reader.getInterfaces(), srcPath,
+				fieldCount, memberNames, memberDescs, memberAccess);
+	}
+
+	static final class ClassInfo {
+		ClassInfo(String name, String superName, int access, String[] interfaces, Path srcPath,
+				int fieldCount, String[] memberNames, String[] memberDescs, int[] memberAccess) {
+			this.name = name;
+			this.superName = superName;
+			this.access = access;
+			this.interfaces = interfaces;
+			this.srcPath = srcPath;
+			this.fieldCount = fieldCount;
+			this.memberNames = memberNames;
+			this.memberDescs = memberDescs;
+			this.memberAccess = memberAccess;
+		}
+
+		/**
+		 * Create a class path instance owned by a specific remapper.
+		 */
+		ClassInstance materialize(TinyRemapper context) {
+			ClassInstance ret = new ClassInstance(context, false, srcPath, null);
+			ret.init(name, superName, access, interfaces.clone());
+
+			for (int i = 0; i < memberNames.length; i++) {
+				MemberType type = i < fieldCount ? MemberType.FIELD : MemberType.METHOD;
+				MemberInstance prev = ret.addMember(new MemberInstance(type, ret, memberNames[i], memberDescs[i], memberAccess[i]));
+
+				if (prev != null) {
+					throw new RuntimeException(String.format("duplicate %s %s/%s %s in class path", type.name().toLowerCase(), name, memberNames[i], memberDescs[i]));
+				}
+			}
+
+			return ret;
+		}
+
+		boolean hasVirtualMethod(String methodId) {
+			for (int i = fieldCount; i < memberNames.length; i++) {
+				if ((memberAccess[i] & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) == 0
+						&& MemberInstance.getMethodId(memberNames[i], memberDescs[i]).equals(methodId)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		final String name;
+		final String superName;
+		final int access;
+		final String[] interfaces;
+		final Path srcPath;
+		private final int fieldCount; // fields come first in the member arrays
+		private final String[] memberNames;
+		private final String[] memberDescs;
+		private final int[] memberAccess;
+	}
+
+	private final Map<String, ClassInfo> classes;
+	private final Map<String, List<ClassInfo>> virtualMethodDeclarers = new HashMap<>();
+}
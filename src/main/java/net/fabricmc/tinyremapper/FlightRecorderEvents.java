@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.nio.file.Path;
+
+import net.fabricmc.tinyremapper.RemapMetrics.Phase;
+
+/**
+ * Java Flight Recorder event hooks, which do nothing on Java 8.
+ *
+ * <p>The jar contains a Java 11 version of this class in META-INF/versions/11 emitting the actual events, see
+ * src/main/java11. The begin methods return an event handle to be passed to the matching end method.
+ */
+final class FlightRecorderEvents {
+	static Object beginPhase() {
+		return null;
+	}
+
+	static void endPhase(Object event, Phase phase) { }
+
+	static Object beginRead() {
+		return null;
+	}
+
+	static void endRead(Object event, Path file, boolean isInput, int classCount) { }
+
+	static Object beginApply() {
+		return null;
+	}
+
+	static void endApply(Object event, String className, int size) { }
+
+	static Object beginResolve() {
+		return null;
+	}
+
+	static void endResolve(Object event, String className, String memberId) { }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Output consumer able to receive multiple classes at once.
+ *
+ * <p>TinyRemapper passes all classes that are ready when its writer stage catches up as a single batch, see
+ * {@link TinyRemapper.Builder#outputBufferLimit}.
+ */
+public interface IBatchOutputConsumer extends BiConsumer<String, byte[]> {
+	/**
+	 * Accept remapped classes keyed by their mapped name.
+	 */
+	default void acceptBatch(Map<String, byte[]> classes) {
+		classes.forEach(this);
+	}
+}
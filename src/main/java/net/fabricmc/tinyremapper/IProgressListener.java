@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+/**
+ * Receiver for progress updates of a remapper, see {@link TinyRemapper.Builder#progressListener}.
+ *
+ * <p>Updates are invoked from the worker threads, possibly concurrently, and get throttled to the configured interval
+ * except for the last update of each operation. Implementations should return quickly.
+ */
+public interface IProgressListener {
+	/**
+	 * Progress of a read operation, counting jars and individual class files.
+	 */
+	default void onRead(int filesDone, int filesTotal, long classesRead) { }
+
+	/**
+	 * Progress of propagating the member mappings along the class hierarchy.
+	 */
+	default void onPropagate(long entriesDone, long entriesTotal) { }
+
+	/**
+	 * Progress of an apply operation, counting the classes passed to the output consumer.
+	 */
+	default void onWrite(long classesWritten, long classesTotal) { }
+}
@@ -17,189 +17,165 @@
 
 package net.fabricmc.tinyremapper;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 
 public class Main {
 	public static void main(String[] rawArgs) {
-		List<String> args = new ArrayList<String>(rawArgs.length);
-		boolean reverse = false;
-		boolean ignoreFieldDesc = false;
-		boolean propagatePrivate = false;
-		boolean removeFrames = false;
-		Set<String> forcePropagation = Collections.emptySet();
-		File forcePropagationFile = null;
-		boolean ignoreConflicts = false;
-		boolean checkPackageAccess = false;
-		boolean fixPackageAccess = false;
-		boolean resolveMissing = false;
-		boolean rebuildSourceFilenames = false;
-		boolean skipLocalVariableMapping = false;
-		boolean renameInvalidLocals = false;
-		NonClassCopyMode ncCopyMode = NonClassCopyMode.FIX_META_INF;
-
-		for (String arg : rawArgs) {
-			if (arg.startsWith("--")) {
-				int valueSepPos = arg.indexOf('=');
-
-				String argKey = valueSepPos == -1 ? arg.substring(2) : arg.substring(2, valueSepPos);
-				argKey = argKey.toLowerCase(Locale.ROOT);
-
-				switch (argKey.toLowerCase()) {
-				case "reverse":
-					System.err.println("WARNING: --reverse is not currently implemented!");
-					reverse = true;
-					break;
-				case "ignorefielddesc":
-					ignoreFieldDesc = true;
-					break;
-				case "forcepropagation":
-					forcePropagationFile = new File(arg.substring(valueSepPos + 1));
-					break;
-				case "propagateprivate":
-					propagatePrivate = true;
-					break;
-				case "removeframes":
-					removeFrames = true;
-					break;
-				case "ignoreconflicts":
-					ignoreConflicts = true;
-					break;
-				case "checkpackageaccess":
-					checkPackageAccess = true;
-					break;
-				case "fixpackageaccess":
-					fixPackageAccess = true;
-					break;
-				case "resolvemissing":
-					resolveMissing = true;
-					break;
-				case "rebuildsourcefilenames":
-					rebuildSourceFilenames = true;
-					break;
-				case "skiplocalvariablemapping":
-					skipLocalVariableMapping = true;
-					break;
-				case "renameinvalidlocals":
-					renameInvalidLocals = true;
-					break;
-				case "nonclasscopymode":
-					switch (arg.substring(valueSepPos + 1).toLowerCase(Locale.ENGLISH)) {
-					case "unchanged": ncCopyMode = NonClassCopyMode.UNCHANGED; break;
-					case "fixmeta": ncCopyMode = NonClassCopyMode.FIX_META_INF; break;
-					case "skipmeta": ncCopyMode = NonClassCopyMode.SKIP_META_INF; break;
-					default:
-						System.out.println("invalid nonClassCopyMode: "+arg.substring(valueSepPos + 1));
-						System.exit(1);
-					}
-
-					break;
-				default:
-					System.out.println("invalid argument: "+arg+".");
-					System.exit(1);
-				}
-			} else {
-				args.add(arg);
-			}
+		if (rawArgs.length > 0 && rawArgs[0].toLowerCase(Locale.ROOT).startsWith("--daemon")) {
+			RemapDaemon.main(rawArgs);
+			return;
 		}
 
-		if (args.size() < 5) {
-			System.out.println("usage: <input> <output> <mappings> <from> <to> [<classpath>]... [--reverse] [--forcePropagation=<file>] [--propagatePrivate] [--ignoreConflicts]");
-			System.exit(1);
-		}
+		RemapOptions options;
 
-		Path input = Paths.get(args.get(0));
-		if (!Files.isReadable(input)) {
-			System.out.println("Can't read input file "+input+".");
+		try {
+			options = RemapOptions.parse(rawArgs);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
 			System.exit(1);
+			return;
 		}
 
-		Path output = Paths.get(args.get(1));
+		ClassCache classCache = null;
 
-		Path mappings = Paths.get(args.get(2));
-		if (!Files.isReadable(mappings) || Files.isDirectory(mappings)) {
-			System.out.println("Can't read mappings file "+mappings+".");
-			System.exit(1);
+		if (options.classCacheDir != null) {
+			try {
+				classCache = new ClassCache(options.classCacheDir, options.classCacheSize);
+			} catch (IOException e) {
+				System.out.println("Can't open class cache "+options.classCacheDir+": "+e);
+				System.exit(1);
+			}
 		}
 
-		String fromM = args.get(3);
-		String toM = args.get(4);
-
-		Path[] classpath = new Path[args.size() - 5];
-
-		for (int i = 0; i < classpath.length; i++) {
-			classpath[i] = Paths.get(args.get(i + 5));
-			if (!Files.isReadable(classpath[i])) {
-				System.out.println("Can't read classpath file "+i+": "+classpath[i]+".");
+		long startTime = System.nanoTime();
+		RemapMetrics metrics = new RemapMetrics();
+
+		if (options.batchManifest != null) {
+			runBatch(options, classCache, metrics);
+		} else {
+			try {
+				run(options, classCache, metrics);
+			} catch (MappingConflictException e) {
+				System.out.println(e.getMessage()+".");
 				System.exit(1);
 			}
 		}
 
-		if (forcePropagationFile != null) {
-			forcePropagation = new HashSet<>();
-
-			if (!forcePropagationFile.canRead()) {
-				System.out.println("Can't read forcePropagation file "+forcePropagationFile+".");
-				System.exit(1);
+		if (options.stats) {
+			if (options.statsFile != null) {
+				try {
+					Files.write(options.statsFile, metrics.toJson().getBytes(StandardCharsets.UTF_8));
+				} catch (IOException e) {
+					System.out.println("Can't write stats file "+options.statsFile+": "+e);
+				}
+			} else {
+				System.out.print(metrics.toJson());
 			}
+		}
+
+		if (classCache != null) {
+			System.out.printf("Class cache: %d hits, %d misses (%.1f%% hit rate), %d evictions.\n",
+					classCache.getHits(), classCache.getMisses(), classCache.getHitRate() * 100, classCache.getEvictions());
+		}
 
-			try (BufferedReader reader = new BufferedReader(new FileReader(forcePropagationFile))) {
-				String line;
+		System.out.printf("Finished after %.2f ms.\n", (System.nanoTime() - startTime) / 1e6);
+	}
+
+	private static void run(RemapOptions options, ClassCache classCache, RemapMetrics metrics) {
+		TinyRemapper remapper = options.createRemapper(TinyUtils.createTinyMappingProvider(options.mappings, options.fromM, options.toM), classCache);
 
-				while ((line = reader.readLine()) != null) {
-					line = line.trim();
+		try (OutputConsumerPath outputConsumer = options.createOutputConsumer(options.output)) {
+			CompletableFuture<?> nonClassFilesCopied = outputConsumer.addNonClassFilesAsync(options.input, options.ncCopyMode, remapper);
 
-					if (line.isEmpty() || line.charAt(0) == '#') continue;
+			try {
+				CompletableFuture.allOf(remapper.loadMappingsAsync(),
+						remapper.readInputsAsync(options.input),
+						remapper.readClassPathAsync(options.classpath)).join();
 
-					forcePropagation.add(line);
+				remapper.apply(outputConsumer);
+			} catch (RuntimeException e) {
+				// the copy still writes to outputConsumer, let it finish before closing it
+				try {
+					nonClassFilesCopied.join();
+				} catch (RuntimeException e2) {
+					e.addSuppressed(e2);
 				}
-			} catch (IOException e) {
-				e.printStackTrace();
-				System.exit(1);
+
+				throw e;
 			}
+
+			nonClassFilesCopied.join();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			remapper.finish();
+			metrics.add(remapper.getMetrics());
 		}
+	}
 
-		long startTime = System.nanoTime();
+	private static void runBatch(RemapOptions options, ClassCache classCache, RemapMetrics metrics) {
+		int parallelism = options.parallelism > 0 ? options.parallelism : BatchRemapper.getDefaultParallelism();
+		ForkJoinPool threadPool = new ForkJoinPool(Math.max(Runtime.getRuntime().availableProcessors(), 2)); // shared by all workers
+		options.executor = threadPool;
+		IMappingProvider mappings = new CachedMappingProvider(TinyUtils.createTinyMappingProvider(options.mappings, options.fromM, options.toM));
 
-		TinyRemapper remapper = TinyRemapper.newRemapper()
-				.withMappings(TinyUtils.createTinyMappingProvider(mappings, fromM, toM))
-				.ignoreFieldDesc(ignoreFieldDesc)
-				.withForcedPropagation(forcePropagation)
-				.propagatePrivate(propagatePrivate)
-				.removeFrames(removeFrames)
-				.ignoreConflicts(ignoreConflicts)
-				.checkPackageAccess(checkPackageAccess)
-				.fixPackageAccess(fixPackageAccess)
-				.resolveMissing(resolveMissing)
-				.rebuildSourceFilenames(rebuildSourceFilenames)
-				.skipLocalVariableMapping(skipLocalVariableMapping)
-				.renameInvalidLocals(renameInvalidLocals)
-				.build();
+		List<TinyRemapper> remappers = Collections.synchronizedList(new ArrayList<>());
 
-		try (OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(output).build()) {
-			outputConsumer.addNonClassFiles(input, ncCopyMode, remapper);
+		BatchRemapper batch = new BatchRemapper.Builder(() -> {
+			TinyRemapper remapper = options.createRemapper(mappings, classCache);
+			remappers.add(remapper);
 
-			remapper.readInputs(input);
-			remapper.readClassPath(classpath);
+			return remapper;
+		})
+				.classPath(options.classpath)
+				.parallelism(parallelism)
+				.nonClassCopyMode(options.ncCopyMode)
+				.deterministic(options.deterministic)
+				.build();
 
-			remapper.apply(outputConsumer);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+		List<BatchRemapper.Result> results;
+
+		try {
+			results = batch.run(options.jobs);
 		} finally {
-			remapper.finish();
+			threadPool.shutdown();
 		}
 
-		System.out.printf("Finished after %.2f ms.\n", (System.nanoTime() - startTime) / 1e6);
+		for (TinyRemapper remapper : remappers) {
+			metrics.add(remapper.getMetrics());
+		}
+
+		int failed = 0;
+		long classes = 0;
+
+		for (BatchRemapper.Result result : results) {
+			BatchRemapper.Job job = result.getJob();
+			double ms = result.getTimeNanos() / 1e6;
+
+			if (result.getError() != null) {
+				Throwable error = result.getError();
+				failed++;
+				System.out.printf("%s -> %s: failed after %.2f ms: %s\n", job.getInput(), job.getOutput(), ms,
+						error instanceof MappingConflictException ? error.getMessage() : error);
+			} else {
+				classes += result.getClassCount();
+				System.out.printf("%s -> %s: %d classes in %.2f ms (%.0f classes/s)\n",
+						job.getInput(), job.getOutput(), result.getClassCount(), ms, result.getClassCount() / Math.max(ms, 1e-3) * 1e3);
+			}
+		}
+
+		System.out.printf("Remapped %d jars with %d classes, %d failed.\n", results.size() - failed, classes, failed);
+
+		if (failed > 0) {
+			System.exit(1);
+		}
 	}
 }
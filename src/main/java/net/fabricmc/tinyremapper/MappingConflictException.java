@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.fabricmc.tinyremapper;
+
+/**
+ * Thrown when the mappings make members clash or disagree on a member's name in a way that can't be resolved.
+ *
+ * <p>The individual conflicts get printed to the standard output beforehand. The remapper state is undefined
+ * afterwards, only {@link TinyRemapper#finish()} may be invoked.
+ */
+public class MappingConflictException extends RuntimeException {
+	public MappingConflictException(String message) {
+		super(message);
+	}
+
+	private static final long serialVersionUID = 1L;
+}
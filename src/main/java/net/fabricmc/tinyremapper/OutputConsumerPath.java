@@ -17,16 +17,19 @@
 
 package net.fabricmc.tinyremapper;
 
-import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
@@ -34,20 +37,20 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
-import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.function.BiConsumer;
 import java.util.function.Predicate;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
-public class OutputConsumerPath implements BiConsumer<String, byte[]>, Closeable {
+public class OutputConsumerPath implements IBatchOutputConsumer, Closeable {
 	public static class Builder {
 		public Builder(Path destination) {
 			this.destination = destination;
@@ -68,6 +71,28 @@ public class OutputConsumerPath implements BiConsumer<String, byte[]>, Closeable
 			return this;
 		}
 
+		/**
+		 * Write archives directly instead of through a zip file system.
+		 *
+		 * <p>Entries get compressed by the writing thread and appended immediately, so writes can proceed in parallel.
+		 * An existing archive at the destination will be replaced instead of updated.
+		 */
+		public Builder streamArchive(boolean value) {
+			this.streamArchive = value;
+			return this;
+		}
+
+		/**
+		 * Write archives with entries sorted by name and a fixed timestamp, independent of the order they were added in.
+		 *
+		 * <p>This implies streamArchive, the entries are kept in memory in compressed form until the archive gets closed.
+		 * The remapper's outputBufferLimit thus doesn't bound the memory used for the output.
+		 */
+		public Builder deterministic(boolean value) {
+			this.deterministic = value;
+			return this;
+		}
+
 		public Builder filter(Predicate<String> classNameFilter) {
 			this.classNameFilter = classNameFilter;
 			return this;
@@ -76,13 +101,15 @@ public class OutputConsumerPath implements BiConsumer<String, byte[]>, Closeable
 		public OutputConsumerPath build() throws IOException {
 			boolean isJar = assumeArchive == null || Files.exists(destination) ? isJar(destination) : assumeArchive;
 
-			return new OutputConsumerPath(destination, isJar, keepFsOpen, threadSyncWrites, classNameFilter);
+			return new OutputConsumerPath(destination, isJar, keepFsOpen, threadSyncWrites, streamArchive, deterministic, classNameFilter);
 		}
 
 		private final Path destination;
 		private Boolean assumeArchive;
 		private boolean keepFsOpen = false;
 		private boolean threadSyncWrites = false;
+		private boolean streamArchive = false;
+		private boolean deterministic = false;
 		private Predicate<String> classNameFilter;
 	}
 
@@ -91,13 +118,18 @@ public class OutputConsumerPath implements BiConsumer<String, byte[]>, Closeable
 	}
 
 	public OutputConsumerPath(Path dstDir, boolean closeFs) throws IOException {
-		this(dstDir, isJar(dstDir), !closeFs, false, null);
+		this(dstDir, isJar(dstDir), !closeFs, false, false, false, null);
 	}
 
-	private OutputConsumerPath(Path destination, boolean isJar, boolean keepFsOpen, boolean threadSyncWrites,
-			Predicate<String> classNameFilter) throws IOException {
+	private OutputConsumerPath(Path destination, boolean isJar, boolean keepFsOpen, boolean threadSyncWrites, boolean streamArchive,
+			boolean deterministic, Predicate<String> classNameFilter) throws IOException {
+		ZipWriter zipWriter = null;
+
 		if (!isJar) {
 			Files.createDirectories(destination);
+		} else if (streamArchive || deterministic) {
+			createParentDirs(destination);
+			zipWriter = new ZipWriter(destination, deterministic);
 		} else {
 			createParentDirs(destination);
 			URI uri;
@@ -115,8 +147,9 @@ public class OutputConsumerPath implements BiConsumer<String, byte[]>, Closeable
 		}
 
 		this.dstDir = destination;
-		this.closeFs = isJar && !keepFsOpen;
-		this.isJarFs = isJar;
+		this.zipWriter = zipWriter;
+		this.closeFs = isJar && !keepFsOpen && zipWriter == null;
+		this.isJarFs = isJar && zipWriter == null;
 		this.lock = threadSyncWrites ? new ReentrantLock() : null;
 		this.classNameFilter = classNameFilter;
 	}
@@ -126,6 +159,18 @@ public class OutputConsumerPath implements BiConsumer<String, byte[]>, Closeable
 		assert !Files.isDirectory(srcFile);
 
 		if (srcFile.toString().endsWith(classSuffix)) return;
+
+		if (zipWriter != null) {
+			StringBuilder name = new StringBuilder(first);
+
+			for (String part : more) {
+				name.append('/').append(part);
+			}
+
+			zipWriter.write(name.toString(), Files.readAllBytes(srcFile));
+			return;
+		}
+
 		Path dstFile = dstDir.resolve(dstDir.getFileSystem().getPath(first, more));
 
 		createParentDirs(dstFile);
@@ -144,12 +189,32 @@ public class OutputConsumerPath implements BiConsumer<String, byte[]>, Closeable
 		if (Files.isDirectory(srcFile)) {
 			addNonClassFiles(srcFile, copyMode, remapper, false);
 		} else if (Files.exists(srcFile)) {
-			addNonClassFiles(FileSystems.newFileSystem(srcFile, null).getPath("/"), copyMode, remapper, true);
+			if (zipWriter != null) {
+				addNonClassFilesRaw(srcFile, copyMode, remapper);
+			} else {
+				addNonClassFiles(FileSystems.newFileSystem(srcFile, null).getPath("/"), copyMode, remapper, true);
+			}
 		} else {
 			throw new FileNotFoundException("file "+srcFile+" doesn't exist");
 		}
 	}
 
+	/**
+	 * Start copying the non-class files on the remapper's threads for I/O, e.g. while it reads and remaps classes.
+	 *
+	 * <p>Classes can be written concurrently if the consumer uses streamArchive, writes to a directory or has
+	 * threadSyncWrites enabled.
+	 */
+	public CompletableFuture<?> addNonClassFilesAsync(Path srcFile, NonClassCopyMode copyMode, TinyRemapper remapper) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				addNonClassFiles(srcFile, copyMode, remapper);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}, remapper != null ? remapper.getIoExecutor() : ForkJoinPool.commonPool());
+	}
+
 	public void addNonClassFiles(Path srcDir, NonClassCopyMode copyMode, TinyRemapper remapper, boolean closeFs) throws IOException {
 		try {
 			if (lock != null) lock.lock();
@@ -162,16 +227,12 @@ public class OutputConsumerPath implements BiConsumer<String, byte[]>, Closeable
 
 					if (!fileName.endsWith(classSuffix)) {
 						Path relativePath = srcDir.relativize(file);
-						Path dstFile = dstDir.resolve(relativePath.toString()); // toString bypasses resolve requiring identical fs providers
 
 						if (copyMode == NonClassCopyMode.UNCHANGED
 								|| !relativePath.startsWith("META-INF")
 								|| copyMode == NonClassCopyMode.SKIP_META_INF && relativePath.getNameCount() != 2) { // allow sub-folders of META-INF
-							createParentDirs(dstFile);
-							Files.copy(file, dstFile, StandardCopyOption.REPLACE_EXISTING);
+							copyFile(file, relativePath);
 						} else if (copyMode == NonClassCopyMode.FIX_META_INF && !shouldStripForFixMeta(relativePath)) {
-							createParentDirs(dstFile);
-
 							if (fileName.equals("MANIFEST.MF")) {
 								Manifest manifest;
 
@@ -181,18 +242,21 @@ public class OutputConsumerPath implements BiConsumer<String, byte[]>, Closeable
 
 								fixManifest(manifest, remapper);
 
-								try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(dstFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
-									manifest.write(os);
-								}
+								ByteArrayOutputStream os = new ByteArrayOutputStream();
+								manifest.write(os);
+								writeFile(relativePath, os.toByteArray());
 							} else if (remapper != null && relativePath.getNameCount() == 3 && relativePath.getName(1).toString().equals("services")) {
 								fileName = mapFullyQualifiedClassName(fileName, remapper);
+								ByteArrayOutputStream os = new ByteArrayOutputStream();
 
 								try (BufferedReader reader = Files.newBufferedReader(file);
-										BufferedWriter writer = Files.newBufferedWriter(dstFile.getParent().resolve(fileName), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+										BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8))) {
 									fixServiceDecl(reader, writer, remapper);
 								}
+
+								writeFile(relativePath.resolveSibling(fileName), os.toByteArray());
 							} else {
-								Files.copy(file, dstFile, StandardCopyOption.REPLACE_EXISTING);
+								copyFile(file, relativePath);
 							}
 						}
 					}
@@ -207,13 +271,101 @@ public class OutputConsumerPath implements BiConsumer<String, byte[]>, Closeable
 		}
 	}
 
+	/**
+	 * Copy the non-class entries of an archive without decompressing them, unless they have to be modified.
+	 *
+	 * <p>This mirrors the Path based addNonClassFiles and requires the destination to be written with zipWriter.
+	 */
+	private void addNonClassFilesRaw(Path srcFile, NonClassCopyMode copyMode, TinyRemapper remapper) throws IOException {
+		assert zipWriter != null;
+
+		if (closed) throw new IllegalStateException("consumer already closed");
+
+		try (ZipReader reader = new ZipReader(srcFile)) {
+			for (ZipReader.Entry entry : reader.getEntries()) {
+				String name = entry.name;
+				if (entry.isDirectory() || name.endsWith(classSuffix)) continue;
+
+				int nameStart = name.lastIndexOf('/') + 1;
+				String fileName = name.substring(nameStart);
+				int nameCount = 1;
+
+				for (int pos = 0; (pos = name.indexOf('/', pos) + 1) > 0; ) {
+					nameCount++;
+				}
+
+				if (copyMode == NonClassCopyMode.UNCHANGED
+						|| !name.startsWith("META-INF/")
+						|| copyMode == NonClassCopyMode.SKIP_META_INF && nameCount != 2) { // allow sub-folders of META-INF
+					zipWriter.copyRaw(name, reader, entry);
+				} else if (copyMode == NonClassCopyMode.FIX_META_INF && !(nameCount == 2 && shouldStripForFixMeta(fileName))) {
+					if (fileName.equals("MANIFEST.MF")) {
+						Manifest manifest = new Manifest(new ByteArrayInputStream(reader.read(entry)));
+						fixManifest(manifest, remapper);
+
+						ByteArrayOutputStream os = new ByteArrayOutputStream();
+						manifest.write(os);
+						zipWriter.write(name, os.toByteArray());
+					} else if (remapper != null && nameCount == 3 && name.startsWith("META-INF/services/")) {
+						fileName = mapFullyQualifiedClassName(fileName, remapper);
+						ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+						try (BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(reader.read(entry)), StandardCharsets.UTF_8));
+								BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8))) {
+							fixServiceDecl(in, writer, remapper);
+						}
+
+						zipWriter.write(name.substring(0, nameStart).concat(fileName), os.toByteArray());
+					} else {
+						zipWriter.copyRaw(name, reader, entry);
+					}
+				}
+			}
+		}
+	}
+
+	private void copyFile(Path srcFile, Path relativePath) throws IOException {
+		if (zipWriter != null) {
+			zipWriter.write(toEntryName(relativePath), Files.readAllBytes(srcFile));
+		} else {
+			Path dstFile = dstDir.resolve(relativePath.toString()); // toString bypasses resolve requiring identical fs providers
+
+			createParentDirs(dstFile);
+			Files.copy(srcFile, dstFile, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private void writeFile(Path relativePath, byte[] data) throws IOException {
+		if (zipWriter != null) {
+			zipWriter.write(toEntryName(relativePath), data);
+		} else {
+			Path dstFile = dstDir.resolve(relativePath.toString());
+
+			createParentDirs(dstFile);
+			Files.write(dstFile, data);
+		}
+	}
+
+	private static String toEntryName(Path relativePath) {
+		StringBuilder ret = new StringBuilder();
+
+		for (Path part : relativePath) {
+			if (ret.length() > 0) ret.append('/');
+			ret.append(part.toString());
+		}
+
+		return ret.toString();
+	}
+
 	private static boolean shouldStripForFixMeta(Path file) {
 		if (file.getNameCount() != 2) return false; // not directly inside META-INF dir
 
 		assert file.getName(0).toString().equals("META-INF");
 
-		String fileName = file.getFileName().toString();
+		return shouldStripForFixMeta(file.getFileName().toString());
+	}
 
+	private static boolean shouldStripForFixMeta(String fileName) {
 		// https://docs.oracle.com/en/java/javase/12/docs/specs/jar/jar.html#signed-jar-file
 		return fileName.endsWith(".SF")
 				|| fileName.endsWith(".DSA")
@@ -292,6 +444,18 @@ public class OutputConsumerPath implements BiConsumer<String, byte[]>, Closeable
 	public void accept(String clsName, byte[] data) {
 		if (classNameFilter != null && !classNameFilter.test(clsName)) return;
 
+		if (zipWriter != null) { // synchronizes internally
+			if (closed) throw new IllegalStateException("consumer already closed");
+
+			try {
+				zipWriter.write(clsName + classSuffix, data);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+
+			return;
+		}
+
 		try {
 			if (lock != null) lock.lock();
 			if (closed) throw new IllegalStateException("consumer already closed");
@@ -313,6 +477,19 @@ public class OutputConsumerPath implements BiConsumer<String, byte[]>, Closeable
 		}
 	}
 
+	@Override
+	public void acceptBatch(Map<String, byte[]> classes) {
+		try {
+			if (lock != null) lock.lock(); // only lock once for the whole batch, accept re-enters
+
+			for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+				accept(entry.getKey(), entry.getValue());
+			}
+		} finally {
+			if (lock != null) lock.unlock();
+		}
+	}
+
 	@Override
 	public void close() throws IOException {
 		if (closed) return;
@@ -320,7 +497,9 @@ public class OutputConsumerPath implements BiConsumer<String, byte[]>, Closeable
 		try {
 			if (lock != null) lock.lock();
 
-			if (closeFs) {
+			if (zipWriter != null) {
+				zipWriter.close();
+			} else if (closeFs) {
 				dstDir.getFileSystem().close();
 			}
 
@@ -348,6 +527,7 @@ public class OutputConsumerPath implements BiConsumer<String, byte[]>, Closeable
 	private static final String classSuffix = ".class";
 
 	private final Path dstDir;
+	private final ZipWriter zipWriter;
 	private final boolean closeFs;
 	private final boolean isJarFs;
 	private final Lock lock;
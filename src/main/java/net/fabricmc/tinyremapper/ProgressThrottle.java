@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limit for progress updates shared by the tasks of one operation.
+ */
+final class ProgressThrottle {
+	ProgressThrottle(long intervalMs) {
+		this.intervalNanos = intervalMs * 1000000;
+		this.nextUpdate = new AtomicLong(System.nanoTime());
+	}
+
+	/**
+	 * Determine whether an update should be passed on now, claiming the current interval if so.
+	 *
+	 * @param isLast Whether this is the final update of the operation, which always passes.
+	 */
+	boolean tryUpdate(boolean isLast) {
+		if (isLast) return true;
+
+		long time = System.nanoTime();
+		long next = nextUpdate.get();
+
+		return time - next >= 0 && nextUpdate.compareAndSet(next, time + intervalNanos);
+	}
+
+	private final long intervalNanos;
+	private final AtomicLong nextUpdate;
+}
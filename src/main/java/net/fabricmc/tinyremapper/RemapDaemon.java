@@ -0,0 +1,415 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived process running remap jobs with warm state.
+ *
+ * <p>The daemon listens on a loopback TCP port. Other users on the same machine can connect to it as well, so every
+ * request has to start with a line holding the random token the daemon writes to its token file on startup, the file
+ * is only readable by the daemon's user. After the token a client sends the regular command line arguments of a job,
+ * one per line and terminated by an empty line, the daemon answers with a single line, either "OK &lt;ms&gt;" or
+ * "ERROR &lt;message&gt;". A line containing only "stop" shuts the daemon down. Requests without the correct token are
+ * dropped without an answer. Jobs run concurrently, diagnostics go to the daemon's own output.
+ *
+ * <p>Parsed mappings are kept per mapping file and analyzed class paths as {@link ClassPathSnapshot} per set of class
+ * path files, shared by all configurations using them. Remapper instances with their propagation results are kept per
+ * configuration and reused through {@link TinyRemapper#updateInputs}, so jobs remapping the same or slightly changed
+ * inputs only redo the work for the changes. Files are identified by path, size and modification time. State unused
+ * for the idle timeout gets evicted. All remappers share one thread pool sized to the processor count.
+ */
+final class RemapDaemon {
+	/**
+	 * Run the daemon, taking the arguments --daemon[=&lt;port&gt;], --idleTimeout=&lt;seconds&gt; and
+	 * --tokenFile=&lt;path&gt;.
+	 *
+	 * <p>The token file defaults to .tiny-remapper-daemon-&lt;port&gt;.token in the user's home directory.
+	 */
+	static void main(String[] rawArgs) {
+		int port = 0;
+		long idleTimeout = 600;
+		Path tokenFile = null;
+
+		for (String arg : rawArgs) {
+			int valueSepPos = arg.indexOf('=');
+			String argKey = valueSepPos == -1 ? arg : arg.substring(0, valueSepPos);
+			String value = valueSepPos == -1 ? null : arg.substring(valueSepPos + 1);
+
+			try {
+				switch (argKey.toLowerCase(Locale.ROOT)) {
+				case "--daemon":
+					if (value != null) port = Integer.parseInt(value);
+					break;
+				case "--idletimeout":
+					idleTimeout = Long.parseLong(value);
+					break;
+				case "--tokenfile":
+					tokenFile = Paths.get(value);
+					break;
+				default:
+					System.out.println("invalid daemon argument: "+arg+".");
+					System.exit(1);
+				}
+			} catch (NumberFormatException e) {
+				System.out.println("invalid value for "+argKey+": "+value);
+				System.exit(1);
+			}
+		}
+
+		try {
+			new RemapDaemon(TimeUnit.SECONDS.toMillis(idleTimeout)).run(port, tokenFile);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	RemapDaemon(long idleTimeoutMs) {
+		this.idleTimeoutMs = idleTimeoutMs;
+	}
+
+	void run(int port, Path tokenFile) throws IOException {
+		try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+			this.serverSocket = serverSocket;
+
+			if (tokenFile == null) {
+				tokenFile = Paths.get(System.getProperty("user.home"), ".tiny-remapper-daemon-"+serverSocket.getLocalPort()+".token");
+			}
+
+			this.tokenFile = tokenFile;
+			writeToken(tokenFile);
+			System.out.printf("Listening on port %d, token in %s.\n", serverSocket.getLocalPort(), tokenFile);
+
+			evictionTimer.scheduleWithFixedDelay(this::evictIdle, idleTimeoutMs, Math.max(idleTimeoutMs / 4, 1000), TimeUnit.MILLISECONDS);
+
+			while (!stopped) {
+				Socket socket;
+
+				try {
+					socket = serverSocket.accept();
+				} catch (IOException e) {
+					if (stopped) break;
+					throw e;
+				}
+
+				jobExecutor.execute(() -> handle(socket));
+			}
+		} finally {
+			if (this.tokenFile != null) Files.deleteIfExists(this.tokenFile);
+
+			evictionTimer.shutdownNow();
+			jobExecutor.shutdown();
+			remapThreadPool.shutdown();
+
+			synchronized (remappers) {
+				for (WarmRemappers entry : remappers.values()) {
+					for (WarmRemapper remapper : entry.idle) {
+						remapper.remapper.finish();
+					}
+				}
+
+				remappers.clear();
+			}
+		}
+	}
+
+	/**
+	 * Create a new random token, replacing any previous file with one only accessible by the current user.
+	 */
+	private void writeToken(Path file) throws IOException {
+		byte[] bytes = new byte[32];
+		new SecureRandom().nextBytes(bytes);
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >>> 4) & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+
+		token = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+		// create the file with restricted access upfront instead of changing it later, a pre-existing file or link
+		// may have been planted by someone else
+		Files.deleteIfExists(file);
+
+		if (file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			Files.createFile(file, PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+		} else { // e.g. Windows, where the user's home directory isn't accessible by others
+			Files.createFile(file);
+		}
+
+		Files.write(file, token);
+	}
+
+	private boolean isAuthorized(String line) {
+		return line != null && MessageDigest.isEqual(line.getBytes(StandardCharsets.UTF_8), token);
+	}
+
+	private void handle(Socket socket) {
+		try (Socket s = socket;
+				BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+				Writer writer = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)) {
+			if (!isAuthorized(reader.readLine())) {
+				System.out.println("Rejected a request with an invalid token.");
+				return;
+			}
+
+			List<String> args = new ArrayList<>();
+			String line;
+
+			while ((line = reader.readLine()) != null && !line.isEmpty()) {
+				args.add(line);
+			}
+
+			if (args.size() == 1 && args.get(0).equals("stop")) {
+				writer.write("OK 0\n");
+				writer.flush();
+				stop();
+				return;
+			}
+
+			String response;
+
+			try {
+				long startTime = System.nanoTime();
+				runJob(RemapOptions.parse(args.toArray(new String[0])));
+				response = String.format(Locale.ROOT, "OK %.2f", (System.nanoTime() - startTime) / 1e6);
+			} catch (IllegalArgumentException | MappingConflictException e) { // invalid job arguments or mappings, details are in the output
+				response = "ERROR "+e.getMessage();
+			} catch (Throwable t) {
+				t.printStackTrace();
+				response = "ERROR "+String.valueOf(t.getMessage()).replace('\n', ' ');
+			}
+
+			writer.write(response);
+			writer.write('\n');
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void stop() {
+		stopped = true;
+
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	private void runJob(RemapOptions options) throws IOException {
+		if (options.batchManifest != null) throw new IllegalArgumentException("batch jobs are not supported by the daemon");
+
+		options.executor = remapThreadPool;
+		String key = options.getRemapperKey()+"\n"+getFileKey(options.mappings)+"\n"+getFileKeys(options.classpath);
+		WarmRemapper remapper = acquire(key, options);
+		boolean success = false;
+
+		try {
+			try (OutputConsumerPath outputConsumer = options.createOutputConsumer(options.output)) {
+				remapper.remap(options.input, outputConsumer, options.ncCopyMode);
+			}
+
+			success = true;
+		} finally {
+			if (success) {
+				release(key, remapper);
+			} else { // state may be inconsistent
+				remapper.remapper.finish();
+			}
+		}
+	}
+
+	private WarmRemapper acquire(String key, RemapOptions options) throws IOException {
+		synchronized (remappers) {
+			WarmRemappers entry = remappers.get(key);
+
+			if (entry != null && !entry.idle.isEmpty()) {
+				return entry.idle.poll();
+			}
+		}
+
+		TinyRemapper remapper = options.createRemapper(getMappings(options), getClassCache(options));
+		remapper.attachClassPath(getClassPath(options));
+
+		return new WarmRemapper(remapper);
+	}
+
+	private void release(String key, WarmRemapper remapper) {
+		remapper.lastUsed = System.currentTimeMillis();
+
+		synchronized (remappers) {
+			remappers.computeIfAbsent(key, ignore -> new WarmRemappers()).idle.push(remapper);
+		}
+	}
+
+	private IMappingProvider getMappings(RemapOptions options) throws IOException {
+		String key = getFileKey(options.mappings)+"\n"+options.fromM+"\n"+options.toM;
+		Cached<IMappingProvider> ret = mappings.get(key);
+
+		if (ret == null) {
+			ret = new Cached<>(new CachedMappingProvider(TinyUtils.createTinyMappingProvider(options.mappings, options.fromM, options.toM)));
+			Cached<IMappingProvider> prev = mappings.putIfAbsent(key, ret);
+			if (prev != null) ret = prev;
+		}
+
+		ret.lastUsed = System.currentTimeMillis();
+
+		return ret.value;
+	}
+
+	private ClassPathSnapshot getClassPath(RemapOptions options) throws IOException {
+		String key = getFileKeys(options.classpath);
+		Cached<ClassPathSnapshot> ret = classPaths.get(key);
+
+		if (ret == null) {
+			ret = new Cached<>(ClassPathSnapshot.create(options.classpath));
+			Cached<ClassPathSnapshot> prev = classPaths.putIfAbsent(key, ret);
+			if (prev != null) ret = prev;
+		}
+
+		ret.lastUsed = System.currentTimeMillis();
+
+		return ret.value;
+	}
+
+	private ClassCache getClassCache(RemapOptions options) throws IOException {
+		if (options.classCacheDir == null) return null;
+
+		Path dir = options.classCacheDir.toAbsolutePath().normalize();
+
+		synchronized (classCaches) {
+			ClassCache ret = classCaches.get(dir);
+
+			if (ret == null) {
+				ret = new ClassCache(dir, options.classCacheSize);
+				classCaches.put(dir, ret);
+			}
+
+			return ret;
+		}
+	}
+
+	private void evictIdle() {
+		long minTime = System.currentTimeMillis() - idleTimeoutMs;
+		List<WarmRemapper> evicted = new ArrayList<>();
+
+		synchronized (remappers) {
+			for (Iterator<WarmRemappers> it = remappers.values().iterator(); it.hasNext(); ) {
+				WarmRemappers entry = it.next();
+
+				for (Iterator<WarmRemapper> it2 = entry.idle.iterator(); it2.hasNext(); ) {
+					WarmRemapper remapper = it2.next();
+
+					if (remapper.lastUsed < minTime) {
+						evicted.add(remapper);
+						it2.remove();
+					}
+				}
+
+				if (entry.idle.isEmpty()) it.remove();
+			}
+		}
+
+		mappings.values().removeIf(m -> m.lastUsed < minTime);
+		classPaths.values().removeIf(c -> c.lastUsed < minTime); // remappers still using an evicted snapshot keep it alive
+
+		for (WarmRemapper remapper : evicted) {
+			remapper.remapper.finish();
+		}
+
+		if (!evicted.isEmpty()) {
+			System.out.printf("Evicted %d idle remappers.\n", evicted.size());
+		}
+	}
+
+	private static String getFileKeys(Path[] files) throws IOException {
+		StringBuilder ret = new StringBuilder();
+
+		for (Path file : files) {
+			ret.append(getFileKey(file)).append('\n');
+		}
+
+		return ret.toString();
+	}
+
+	private static String getFileKey(Path file) throws IOException {
+		BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+
+		return file.toAbsolutePath()+" "+attrs.size()+" "+attrs.lastModifiedTime().toMillis();
+	}
+
+	private static final class WarmRemappers {
+		final Deque<WarmRemapper> idle = new ArrayDeque<>();
+	}
+
+	private static final class Cached<T> {
+		Cached(T value) {
+			this.value = value;
+		}
+
+		final T value;
+		volatile long lastUsed;
+	}
+
+	private final long idleTimeoutMs;
+	private final Map<String, WarmRemappers> remappers = new HashMap<>();
+	private final Map<String, Cached<IMappingProvider>> mappings = new ConcurrentHashMap<>();
+	private final Map<String, Cached<ClassPathSnapshot>> classPaths = new ConcurrentHashMap<>();
+	private final Map<Path, ClassCache> classCaches = new HashMap<>();
+	private final ExecutorService jobExecutor = Executors.newCachedThreadPool();
+	private final ForkJoinPool remapThreadPool = new ForkJoinPool(Math.max(Runtime.getRuntime().availableProcessors(), 2));
+	private final ScheduledExecutorService evictionTimer = Executors.newSingleThreadScheduledExecutor();
+	private ServerSocket serverSocket;
+	private Path tokenFile;
+	private byte[] token;
+	private volatile boolean stopped;
+}
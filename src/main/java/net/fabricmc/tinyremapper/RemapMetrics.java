@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings and counters collected by a {@link TinyRemapper} over its lifetime.
+ *
+ * <p>Wall time is measured on the thread coordinating a phase, CPU time is summed over all threads working on it. The
+ * WRITE phase covers the time spent in the output consumer, its wall time is summed over the applying threads as
+ * well. The values are updated live and may be read at any time.
+ *
+ * <p>The tail time of the phases running tasks on the thread pool is the time from the start of the last task until
+ * the phase completes, threads running out of work become idle during it. A long tail indicates units of work too large
+ * for being scheduled evenly.
+ */
+public final class RemapMetrics {
+	public enum Phase {
+		READ,
+		LOAD_MAPPINGS,
+		CHECK_CLASS_MAPPINGS,
+		MERGE,
+		PROPAGATE,
+		HANDLE_CONFLICTS,
+		CHECK_ACCESS,
+		APPLY,
+		WRITE
+	}
+
+	public enum Counter {
+		CLASSES_READ,
+		BYTES_READ,
+		CLASSES_WRITTEN,
+		BYTES_WRITTEN,
+		MAPPING_ENTRIES,
+		PROPAGATION_TASKS,
+		RESOLVE_CACHE_HITS,
+		RESOLVE_CACHE_MISSES,
+		ACCESS_FIXES
+	}
+
+	public long getInvocations(Phase phase) {
+		return invocations[phase.ordinal()].sum();
+	}
+
+	public long getWallTimeNanos(Phase phase) {
+		return wallTimes[phase.ordinal()].sum();
+	}
+
+	public long getCpuTimeNanos(Phase phase) {
+		return cpuTimes[phase.ordinal()].sum();
+	}
+
+	public long getTailTimeNanos(Phase phase) {
+		return tailTimes[phase.ordinal()].sum();
+	}
+
+	public long get(Counter counter) {
+		return counters[counter.ordinal()].sum();
+	}
+
+	/**
+	 * Add the values of other metrics to these, e.g. to sum up multiple remappers.
+	 */
+	public void add(RemapMetrics other) {
+		for (int i = 0; i < phaseCount; i++) {
+			invocations[i].add(other.invocations[i].sum());
+			wallTimes[i].add(other.wallTimes[i].sum());
+			cpuTimes[i].add(other.cpuTimes[i].sum());
+			tailTimes[i].add(other.tailTimes[i].sum());
+		}
+
+		for (int i = 0; i < counterCount; i++) {
+			counters[i].add(other.counters[i].sum());
+		}
+	}
+
+	public void reset() {
+		for (int i = 0; i < phaseCount; i++) {
+			invocations[i].reset();
+			wallTimes[i].reset();
+			cpuTimes[i].reset();
+			tailTimes[i].reset();
+		}
+
+		for (int i = 0; i < counterCount; i++) {
+			counters[i].reset();
+		}
+	}
+
+	public String toJson() {
+		StringBuilder ret = new StringBuilder();
+		ret.append("{\n  \"phases\": {");
+
+		for (Phase phase : Phase.values()) {
+			if (phase.ordinal() > 0) ret.append(',');
+
+			ret.append(String.format(Locale.ROOT, "\n    \"%s\": { \"invocations\": %d, \"wallMs\": %.3f, \"cpuMs\": %.3f, \"tailMs\": %.3f }",
+					toCamelCase(phase.name()), getInvocations(phase), getWallTimeNanos(phase) / 1e6, getCpuTimeNanos(phase) / 1e6, getTailTimeNanos(phase) / 1e6));
+		}
+
+		ret.append("\n  },\n  \"counters\": {");
+
+		for (Counter counter : Counter.values()) {
+			if (counter.ordinal() > 0) ret.append(',');
+
+			ret.append(String.format(Locale.ROOT, "\n    \"%s\": %d", toCamelCase(counter.name()), get(counter)));
+		}
+
+		ret.append("\n  }\n}\n");
+
+		return ret.toString();
+	}
+
+	@Override
+	public String toString() {
+		return toJson();
+	}
+
+	private static String toCamelCase(String name) {
+		StringBuilder ret = new StringBuilder(name.length());
+		boolean upper = false;
+
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+
+			if (c == '_') {
+				upper = true;
+			} else {
+				ret.append(upper ? c : Character.toLowerCase(c));
+				upper = false;
+			}
+		}
+
+		return ret.toString();
+	}
+
+	static long getCpuTime() {
+		return threadBean != null ? threadBean.getCurrentThreadCpuTime() : 0;
+	}
+
+	/**
+	 * Record a phase invocation that started at the given wall and CPU times of the current thread.
+	 */
+	void addTime(Phase phase, long startTime, long startCpuTime) {
+		int idx = phase.ordinal();
+		invocations[idx].increment();
+		wallTimes[idx].add(System.nanoTime() - startTime);
+		cpuTimes[idx].add(getCpuTime() - startCpuTime);
+	}
+
+	/**
+	 * Record a phase invocation's wall time, with the CPU time getting recorded separately by the threads involved.
+	 */
+	void addWallTime(Phase phase, long startTime) {
+		int idx = phase.ordinal();
+		invocations[idx].increment();
+		wallTimes[idx].add(System.nanoTime() - startTime);
+	}
+
+	void addCpuTime(Phase phase, long startCpuTime) {
+		cpuTimes[phase.ordinal()].add(getCpuTime() - startCpuTime);
+	}
+
+	/**
+	 * Record a phase invocation's tail time, ending now.
+	 *
+	 * @param lastTaskStartTime Wall time at which the phase's last task started.
+	 */
+	void addTailTime(Phase phase, long lastTaskStartTime) {
+		tailTimes[phase.ordinal()].add(System.nanoTime() - lastTaskStartTime);
+	}
+
+	void add(Counter counter, long value) {
+		counters[counter.ordinal()].add(value);
+	}
+
+	void increment(Counter counter) {
+		counters[counter.ordinal()].increment();
+	}
+
+	private static LongAdder[] createAdders(int count) {
+		LongAdder[] ret = new LongAdder[count];
+
+		for (int i = 0; i < count; i++) {
+			ret[i] = new LongAdder();
+		}
+
+		return ret;
+	}
+
+	private static ThreadMXBean getThreadBean() {
+		ThreadMXBean ret = ManagementFactory.getThreadMXBean();
+		if (!ret.isCurrentThreadCpuTimeSupported()) return null;
+		if (!ret.isThreadCpuTimeEnabled()) ret.setThreadCpuTimeEnabled(true);
+
+		return ret;
+	}
+
+	private static final int phaseCount = Phase.values().length;
+	private static final int counterCount = Counter.values().length;
+	private static final ThreadMXBean threadBean = getThreadBean();
+
+	private final LongAdder[] invocations = createAdders(phaseCount);
+	private final LongAdder[] wallTimes = createAdders(phaseCount);
+	private final LongAdder[] cpuTimes = createAdders(phaseCount);
+	private final LongAdder[] tailTimes = createAdders(phaseCount);
+	private final LongAdder[] counters = createAdders(counterCount);
+}
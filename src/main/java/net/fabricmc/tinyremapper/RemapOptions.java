@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Remapping job configuration as given on the command line, shared by {@link Main} and {@link RemapDaemon}.
+ */
+final class RemapOptions {
+	/**
+	 * Parse the command line arguments.
+	 *
+	 * @throws IllegalArgumentException if the arguments are invalid, with a message for the user.
+	 */
+	static RemapOptions parse(String[] rawArgs) {
+		RemapOptions ret = new RemapOptions();
+		List<String> args = new ArrayList<String>(rawArgs.length);
+		File forcePropagationFile = null;
+
+		for (String arg : rawArgs) {
+			if (arg.startsWith("--")) {
+				int valueSepPos = arg.indexOf('=');
+
+				String argKey = valueSepPos == -1 ? arg.substring(2) : arg.substring(2, valueSepPos);
+				argKey = argKey.toLowerCase(Locale.ROOT);
+
+				switch (argKey.toLowerCase()) {
+				case "reverse":
+					System.err.println("WARNING: --reverse is not currently implemented!");
+					ret.reverse = true;
+					break;
+				case "ignorefielddesc":
+					ret.ignoreFieldDesc = true;
+					break;
+				case "forcepropagation":
+					forcePropagationFile = new File(arg.substring(valueSepPos + 1));
+					break;
+				case "propagateprivate":
+					ret.propagatePrivate = true;
+					break;
+				case "removeframes":
+					ret.removeFrames = true;
+					break;
+				case "computeframes":
+					ret.computeFrames = true;
+					break;
+				case "ignoreconflicts":
+					ret.ignoreConflicts = true;
+					break;
+				case "checkpackageaccess":
+					ret.checkPackageAccess = true;
+					break;
+				case "fixpackageaccess":
+					ret.fixPackageAccess = true;
+					break;
+				case "resolvemissing":
+					ret.resolveMissing = true;
+					break;
+				case "rebuildsourcefilenames":
+					ret.rebuildSourceFilenames = true;
+					break;
+				case "skiplocalvariablemapping":
+					ret.skipLocalVariableMapping = true;
+					break;
+				case "renameinvalidlocals":
+					ret.renameInvalidLocals = true;
+					break;
+				case "outputbufferlimit":
+					try {
+						ret.outputBufferLimit = Long.parseLong(arg.substring(valueSepPos + 1));
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("invalid outputBufferLimit: "+arg.substring(valueSepPos + 1));
+					}
+
+					break;
+				case "deterministic":
+					ret.deterministic = true;
+					break;
+				case "streamarchive":
+					ret.streamArchive = true;
+					break;
+				case "classcache":
+					ret.classCacheDir = Paths.get(arg.substring(valueSepPos + 1));
+					break;
+				case "classcachesize":
+					try {
+						ret.classCacheSize = Long.parseLong(arg.substring(valueSepPos + 1));
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("invalid classCacheSize: "+arg.substring(valueSepPos + 1));
+					}
+
+					break;
+				case "virtualthreads":
+					ret.virtualThreads = true;
+					break;
+				case "stats":
+					ret.stats = true;
+					if (valueSepPos != -1) ret.statsFile = Paths.get(arg.substring(valueSepPos + 1));
+					break;
+				case "batch":
+					ret.batchManifest = Paths.get(arg.substring(valueSepPos + 1));
+					break;
+				case "parallelism":
+					try {
+						ret.parallelism = Integer.parseInt(arg.substring(valueSepPos + 1));
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("invalid parallelism: "+arg.substring(valueSepPos + 1));
+					}
+
+					break;
+				case "nonclasscopymode":
+					switch (arg.substring(valueSepPos + 1).toLowerCase(Locale.ENGLISH)) {
+					case "unchanged": ret.ncCopyMode = NonClassCopyMode.UNCHANGED; break;
+					case "fixmeta": ret.ncCopyMode = NonClassCopyMode.FIX_META_INF; break;
+					case "skipmeta": ret.ncCopyMode = NonClassCopyMode.SKIP_META_INF; break;
+					default:
+						throw new IllegalArgumentException("invalid nonClassCopyMode: "+arg.substring(valueSepPos + 1));
+					}
+
+					break;
+				default:
+					throw new IllegalArgumentException("invalid argument: "+arg+".");
+				}
+			} else {
+				args.add(arg);
+			}
+		}
+
+		int pos = 0;
+
+		if (ret.batchManifest != null) { // inputs and outputs come from the manifest
+			if (args.size() < 3) {
+				throw new IllegalArgumentException("usage: --batch=<manifest> <mappings> <from> <to> [<classpath>]... [--parallelism=<n>]");
+			}
+
+			ret.jobs = readBatchManifest(ret.batchManifest);
+		} else {
+			if (args.size() < 5) {
+				throw new IllegalArgumentException("usage: <input> <output> <mappings> <from> <to> [<classpath>]... [--reverse] [--forcePropagation=<file>] [--propagatePrivate] [--ignoreConflicts] [--streamArchive]");
+			}
+
+			ret.input = Paths.get(args.get(pos++));
+			if (!Files.isReadable(ret.input)) {
+				throw new IllegalArgumentException("Can't read input file "+ret.input+".");
+			}
+
+			ret.output = Paths.get(args.get(pos++));
+		}
+
+		ret.mappings = Paths.get(args.get(pos++));
+		if (!Files.isReadable(ret.mappings) || Files.isDirectory(ret.mappings)) {
+			throw new IllegalArgumentException("Can't read mappings file "+ret.mappings+".");
+		}
+
+		ret.fromM = args.get(pos++);
+		ret.toM = args.get(pos++);
+
+		ret.classpath = new Path[args.size() - pos];
+
+		for (int i = 0; i < ret.classpath.length; i++) {
+			ret.classpath[i] = Paths.get(args.get(i + pos));
+			if (!Files.isReadable(ret.classpath[i])) {
+				throw new IllegalArgumentException("Can't read classpath file "+i+": "+ret.classpath[i]+".");
+			}
+		}
+
+		if (forcePropagationFile != null) {
+			ret.forcePropagation = new HashSet<>();
+
+			if (!forcePropagationFile.canRead()) {
+				throw new IllegalArgumentException("Can't read forcePropagation file "+forcePropagationFile+".");
+			}
+
+			try (BufferedReader reader = new BufferedReader(new FileReader(forcePropagationFile))) {
+				String line;
+
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+
+					if (line.isEmpty() || line.charAt(0) == '#') continue;
+
+					ret.forcePropagation.add(line);
+				}
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Can't read forcePropagation file "+forcePropagationFile+": "+e);
+			}
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Read a batch manifest, each line containing an input and output path separated by a tab.
+	 *
+	 * <p>Empty lines and lines starting with # are ignored, relative paths are resolved against the manifest's
+	 * directory.
+	 */
+	private static List<BatchRemapper.Job> readBatchManifest(Path manifest) {
+		List<BatchRemapper.Job> ret = new ArrayList<>();
+		Path base = manifest.toAbsolutePath().getParent();
+
+		try (BufferedReader reader = Files.newBufferedReader(manifest)) {
+			String line;
+			int lineNumber = 0;
+
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.trim().isEmpty() || line.charAt(0) == '#') continue;
+
+				int sep = line.indexOf('\t');
+				if (sep < 0) throw new IllegalArgumentException("invalid batch manifest line "+lineNumber+": "+line);
+
+				Path input = base.resolve(line.substring(0, sep).trim());
+				Path output = base.resolve(line.substring(sep + 1).trim());
+
+				if (!Files.isReadable(input)) {
+					throw new IllegalArgumentException("Can't read input file "+input+" (batch manifest line "+lineNumber+").");
+				}
+
+				ret.add(new BatchRemapper.Job(input, output));
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Can't read batch manifest "+manifest+": "+e);
+		}
+
+		return ret;
+	}
+
+	TinyRemapper createRemapper(IMappingProvider mappingProvider, ClassCache classCache) {
+		return TinyRemapper.newRemapper()
+				.withMappings(mappingProvider)
+				.ignoreFieldDesc(ignoreFieldDesc)
+				.withForcedPropagation(forcePropagation)
+				.propagatePrivate(propagatePrivate)
+				.removeFrames(removeFrames)
+				.computeFrames(computeFrames)
+				.ignoreConflicts(ignoreConflicts)
+				.checkPackageAccess(checkPackageAccess)
+				.fixPackageAccess(fixPackageAccess)
+				.resolveMissing(resolveMissing)
+				.rebuildSourceFilenames(rebuildSourceFilenames)
+				.skipLocalVariableMapping(skipLocalVariableMapping)
+				.renameInvalidLocals(renameInvalidLocals)
+				.outputBufferLimit(outputBufferLimit)
+				.classCache(classCache)
+				.threads(threads)
+				.executor(executor)
+				.virtualThreads(virtualThreads)
+				.build();
+	}
+
+	OutputConsumerPath createOutputConsumer(Path output) throws IOException {
+		return new OutputConsumerPath.Builder(output).streamArchive(streamArchive).deterministic(deterministic).build();
+	}
+
+	/**
+	 * Describe the options determining the remapper state besides the inputs, excluding the mapping and class path
+	 * file contents.
+	 */
+	String getRemapperKey() {
+		StringBuilder ret = new StringBuilder();
+		ret.append(mappings.toAbsolutePath()).append('\n');
+		ret.append(fromM).append('\n');
+		ret.append(toM).append('\n');
+
+		for (Path path : classpath) {
+			ret.append(path.toAbsolutePath()).append('\n');
+		}
+
+		ret.append(new TreeSet<>(forcePropagation)).append('\n');
+		ret.append(String.format("%b %b %b %b %b %b %b %b %b %b %b %d %s",
+				ignoreFieldDesc, propagatePrivate, removeFrames, computeFrames, ignoreConflicts, checkPackageAccess, fixPackageAccess,
+				resolveMissing, rebuildSourceFilenames, skipLocalVariableMapping, renameInvalidLocals, outputBufferLimit, classCacheDir));
+
+		return ret.toString();
+	}
+
+	Path input;
+	Path output;
+	Path mappings;
+	String fromM;
+	String toM;
+	Path[] classpath;
+	boolean reverse = false;
+	boolean ignoreFieldDesc = false;
+	boolean propagatePrivate = false;
+	boolean removeFrames = false;
+	boolean computeFrames = false;
+	Set<String> forcePropagation = Collections.emptySet();
+	boolean ignoreConflicts = false;
+	boolean checkPackageAccess = false;
+	boolean fixPackageAccess = false;
+	boolean resolveMissing = false;
+	boolean rebuildSourceFilenames = false;
+	boolean skipLocalVariableMapping = false;
+	boolean renameInvalidLocals = false;
+	long outputBufferLimit = 0;
+	boolean deterministic = false;
+	boolean streamArchive = false; // replaces an existing output archive instead of updating it
+	Path classCacheDir = null;
+	long classCacheSize = 512L << 20;
+	NonClassCopyMode ncCopyMode = NonClassCopyMode.FIX_META_INF;
+	boolean stats = false;
+	Path statsFile = null;
+	Path batchManifest = null;
+	List<BatchRemapper.Job> jobs;
+	int parallelism = 0;
+	boolean virtualThreads = false;
+	int threads = 0;
+	ExecutorService executor = null;
+}
@@ -17,33 +17,54 @@
 
 package net.fabricmc.tinyremapper;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.Callable;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
 import java.util.function.BiConsumer;
 
 import org.objectweb.asm.ClassReader;
@@ -56,6 +77,8 @@ import org.objectweb.asm.commons.Remapper;
 import org.objectweb.asm.util.CheckClassAdapter;
 
 import net.fabricmc.tinyremapper.MemberInstance.MemberType;
+import net.fabricmc.tinyremapper.RemapMetrics.Counter;
+import net.fabricmc.tinyremapper.RemapMetrics.Phase;
 
 public class TinyRemapper {
 	public static class Builder {
@@ -76,6 +99,28 @@ public class TinyRemapper {
 			return this;
 		}
 
+		/**
+		 * Run the tasks on the given executor instead of an own ForkJoinPool with the configured thread count.
+		 *
+		 * <p>The executor may be shared with other remappers or the application, {@link TinyRemapper#finish()} doesn't
+		 * shut it down. The thread count then only determines how the work gets split, it defaults to the parallelism
+		 * of a ForkJoinPool or the number of processors.
+		 */
+		public Builder executor(ExecutorService executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		/**
+		 * Read files and pass the remapped classes to the output consumer on a new virtual thread per task.
+		 *
+		 * <p>Only supported on Java 21+, ignored on older versions. The remapping itself still runs on the executor.
+		 */
+		public Builder virtualThreads(boolean value) {
+			virtualThreads = value;
+			return this;
+		}
+
 		public Builder withForcedPropagation(Set<String> entries) {
 			forcePropagation.addAll(entries);
 			return this;
@@ -91,6 +136,14 @@ public class TinyRemapper {
 			return this;
 		}
 
+		/**
+		 * Recompute all stack map frames from the class hierarchy, takes precedence over removeFrames.
+		 */
+		public Builder computeFrames(boolean value) {
+			computeFrames = value;
+			return this;
+		}
+
 		public Builder ignoreConflicts(boolean value) {
 			ignoreConflicts = value;
 			return this;
@@ -126,6 +179,61 @@ public class TinyRemapper {
 			return this;
 		}
 
+		/**
+		 * Pass the remapped classes to the output consumer from a dedicated writer stage, keeping at most about the
+		 * given number of bytes in flight.
+		 *
+		 * <p>Classes are only scheduled for remapping while the ones being remapped or waiting to be written fit into the
+		 * limit, accounted by their input size. The output consumer gets invoked from the thread calling apply only,
+		 * with multiple classes at once if it implements {@link IBatchOutputConsumer}.
+		 *
+		 * <p>This only bounds the memory if the consumer doesn't retain the classes itself, a deterministic
+		 * {@link OutputConsumerPath} keeps all of them in memory until it gets closed regardless of the limit.
+		 */
+		public Builder outputBufferLimit(long bytes) {
+			outputBufferLimit = bytes;
+			return this;
+		}
+
+		/**
+		 * Reuse remapped classes from an on-disk cache.
+		 *
+		 * <p>Entries are keyed by the input class bytes, the remapping options and a fingerprint of the class hierarchy,
+		 * member mappings after propagation and the class and local variable mappings. With computeFrames the JDK and
+		 * class path used to load classes outside of the analyzed ones are part of the fingerprint. Changing method bodies
+		 * keeps the fingerprint stable, adding or renaming members invalidates all entries. The local name suggestions
+		 * used with renameInvalidLocals are stored with each entry and checked against the mapping providers on reuse.
+		 * The cache is bypassed if an extra remapper is set or access issues are only reported, not fixed.
+		 */
+		public Builder classCache(ClassCache cache) {
+			classCache = cache;
+			return this;
+		}
+
+		/**
+		 * Report the progress of reading, propagating and writing, at most once per progress interval.
+		 */
+		public Builder progressListener(IProgressListener listener) {
+			progressListener = listener;
+			return this;
+		}
+
+		/**
+		 * Minimum time between two progress updates of the same operation in milliseconds, 100 by default.
+		 */
+		public Builder progressInterval(long ms) {
+			progressInterval = ms;
+			return this;
+		}
+
+		/**
+		 * Abort the running and future operations once the token gets cancelled.
+		 */
+		public Builder cancellationToken(CancellationToken token) {
+			cancellationToken = token;
+			return this;
+		}
+
 		public Builder extraAnalyzeVisitor(ClassVisitor visitor) {
 			extraAnalyzeVisitor = visitor;
 			return this;
@@ -137,10 +245,11 @@ public class TinyRemapper {
 		}
 
 		public TinyRemapper build() {
-			TinyRemapper remapper = new TinyRemapper(mappingProviders, ignoreFieldDesc, threadCount,
+			TinyRemapper remapper = new TinyRemapper(mappingProviders, ignoreFieldDesc, threadCount, executor, virtualThreads,
 					forcePropagation, propagatePrivate,
-					removeFrames, ignoreConflicts, resolveMissing, checkPackageAccess || fixPackageAccess, fixPackageAccess,
-					rebuildSourceFilenames, skipLocalMapping, renameInvalidLocals,
+					removeFrames, computeFrames, ignoreConflicts, resolveMissing, checkPackageAccess || fixPackageAccess, fixPackageAccess,
+					rebuildSourceFilenames, skipLocalMapping, renameInvalidLocals, outputBufferLimit, classCache,
+					progressListener, progressInterval, cancellationToken,
 					extraAnalyzeVisitor, extraRemapper);
 
 			return remapper;
@@ -149,9 +258,12 @@ public class TinyRemapper {
 		private final Set<IMappingProvider> mappingProviders = new HashSet<>();
 		private boolean ignoreFieldDesc;
 		private int threadCount;
+		private ExecutorService executor;
+		private boolean virtualThreads = false;
 		private final Set<String> forcePropagation = new HashSet<>();
 		private boolean propagatePrivate = false;
 		private boolean removeFrames = false;
+		private boolean computeFrames = false;
 		private boolean ignoreConflicts = false;
 		private boolean resolveMissing = false;
 		private boolean checkPackageAccess = false;
@@ -159,14 +271,20 @@ public class TinyRemapper {
 		private boolean rebuildSourceFilenames = false;
 		private boolean skipLocalMapping = false;
 		private boolean renameInvalidLocals = false;
+		private long outputBufferLimit = 0;
+		private ClassCache classCache;
+		private IProgressListener progressListener;
+		private long progressInterval = 100;
+		private CancellationToken cancellationToken;
 		private ClassVisitor extraAnalyzeVisitor;
 		private Remapper extraRemapper;
 	}
 
 	private TinyRemapper(Collection<IMappingProvider> mappingProviders, boolean ignoreFieldDesc,
-			int threadCount,
+			int threadCount, ExecutorService executor, boolean virtualThreads,
 			Set<String> forcePropagation, boolean propagatePrivate,
 			boolean removeFrames,
+			boolean computeFrames,
 			boolean ignoreConflicts,
 			boolean resolveMissing,
 			boolean checkPackageAccess,
@@ -174,14 +292,28 @@ public class TinyRemapper {
 			boolean rebuildSourceFilenames,
 			boolean skipLocalMapping,
 			boolean renameInvalidLocals,
+			long outputBufferLimit,
+			ClassCache classCache,
+			IProgressListener progressListener, long progressInterval, CancellationToken cancellationToken,
 			ClassVisitor extraAnalyzeVisitor, Remapper extraRemapper) {
 		this.mappingProviders = mappingProviders;
 		this.ignoreFieldDesc = ignoreFieldDesc;
-		this.threadCount = threadCount > 0 ? threadCount : Math.max(Runtime.getRuntime().availableProcessors(), 2);
-		this.threadPool = Executors.newFixedThreadPool(this.threadCount);
+
+		if (threadCount > 0) {
+			this.threadCount = threadCount;
+		} else if (executor instanceof ForkJoinPool) {
+			this.threadCount = ((ForkJoinPool) executor).getParallelism();
+		} else {
+			this.threadCount = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+		}
+
+		this.threadPool = executor; // created on demand if null
+		this.ownsThreadPool = executor == null;
+		this.virtualThreads = virtualThreads;
 		this.forcePropagation = forcePropagation;
 		this.propagatePrivate = propagatePrivate;
 		this.removeFrames = removeFrames;
+		this.computeFrames = computeFrames;
 		this.ignoreConflicts = ignoreConflicts;
 		this.resolveMissing = resolveMissing;
 		this.checkPackageAccess = checkPackageAccess;
@@ -189,6 +321,11 @@ public class TinyRemapper {
 		this.rebuildSourceFilenames = rebuildSourceFilenames;
 		this.skipLocalMapping = skipLocalMapping;
 		this.renameInvalidLocals = renameInvalidLocals;
+		this.outputBufferLimit = outputBufferLimit;
+		this.classCache = classCache;
+		this.progressListener = progressListener;
+		this.progressInterval = progressInterval;
+		this.cancellationToken = cancellationToken;
 		this.extraAnalyzeVisitor = extraAnalyzeVisitor;
 		this.extraRemapper = extraRemapper;
 	}
@@ -197,52 +334,653 @@ public class TinyRemapper {
 		return new Builder();
 	}
 
+	/**
+	 * Stop the threads created by this remapper, an executor passed to the builder stays untouched.
+	 *
+	 * <p>The remapper remains usable, the threads get created again when needed.
+	 */
 	public void finish() {
-		threadPool.shutdown();
+		List<ExecutorService> executors = new ArrayList<>(2);
+
+		synchronized (this) {
+			if (ownsThreadPool && threadPool != null) executors.add(threadPool);
+			if (ioExecutor != null) executors.add(ioExecutor);
+
+			if (ownsThreadPool) threadPool = null;
+			ioExecutor = null;
+			ioExecutorChecked = false;
+		}
+
+		for (ExecutorService executor : executors) {
+			executor.shutdown();
+		}
+
 		try {
-			threadPool.awaitTermination(20, TimeUnit.SECONDS);
+			for (ExecutorService executor : executors) {
+				executor.awaitTermination(20, TimeUnit.SECONDS);
+			}
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
 	}
 
 	public void readInputs(final Path... inputs) {
-		read(inputs, true);
+		join(readInputsAsync(inputs));
+	}
+
+	/**
+	 * Start reading inputs, allowing other work to proceed concurrently.
+	 *
+	 * <p>The returned future has to complete before apply or getRemapper may be invoked.
+	 */
+	public CompletableFuture<?> readInputsAsync(final Path... inputs) {
+		return read(inputs, true);
 	}
 
 	public void readClassPath(final Path... inputs) {
-		read(inputs, false);
+		join(readClassPathAsync(inputs));
 	}
 
-	private void read(Path[] inputs, boolean isInput) {
-		List<Future<List<ClassInstance>>> futures = new ArrayList<>();
-		List<FileSystem> fsToClose = Collections.synchronizedList(new ArrayList<>());
+	/**
+	 * Start reading class path entries, allowing other work to proceed concurrently.
+	 *
+	 * <p>The returned future has to complete before apply or getRemapper may be invoked.
+	 */
+	public CompletableFuture<?> readClassPathAsync(final Path... inputs) {
+		return read(inputs, false);
+	}
 
-		try {
-			for (Path input : inputs) {
-				futures.addAll(read(input, isInput, true, fsToClose));
+	/**
+	 * Use the classes of a shared class path snapshot.
+	 *
+	 * <p>Only the snapshot classes relevant to the inputs and mappings get instantiated for this remapper, the snapshot
+	 * itself stays unmodified and may be attached to any number of remappers. Classes read through
+	 * {@link #readInputs} or {@link #readClassPath} take precedence, as do snapshots attached later.
+	 */
+	public void attachClassPath(ClassPathSnapshot snapshot) {
+		classPathSnapshots.add(0, snapshot);
+		dirty = true;
+	}
+
+	/**
+	 * Start loading the mappings from all mapping providers, otherwise done by the first apply or getRemapper.
+	 */
+	public CompletableFuture<?> loadMappingsAsync() {
+		return CompletableFuture.runAsync(this::loadMappings, getThreadPool());
+	}
+
+	/**
+	 * Replace, add or remove input classes without redoing the whole analysis and propagation.
+	 *
+	 * <p>Classes keeping their super types, access and members, e.g. after editing method bodies, take over the
+	 * propagation results of the classes they replace. Other changes relink the affected hierarchy edges and propagate
+	 * the mappings again only within the hierarchy connected to the changed classes.
+	 *
+	 * @param classData Contents of new or changed input classes.
+	 * @param removedClasses Names of input classes to remove, unless also contained in classData.
+	 * @return Names of the input classes whose output may have changed, to be passed to {@link #apply(BiConsumer, Collection)}.
+	 * @throws MappingConflictException if propagating the mappings again causes conflicts.
+	 */
+	public Set<String> updateInputs(Collection<byte[]> classData, Collection<String> removedClasses) {
+		return updateInputs(classData, removedClasses, null);
+	}
+
+	/**
+	 * Variant of {@link #updateInputs(Collection, Collection)} reporting the names of the classes in classData.
+	 *
+	 * @param addedClasses Receives the names the classes got registered under, these may differ from their file names.
+	 */
+	Set<String> updateInputs(Collection<byte[]> classData, Collection<String> removedClasses, Set<String> addedClasses) {
+		Map<String, ClassInstance> updates = new HashMap<>(); // null value for removal
+
+		for (String name : removedClasses) {
+			updates.put(name, null);
+		}
+
+		for (byte[] data : classData) {
+			ClassInstance cls = analyze(true, null, data, true);
+			if (cls == null) continue;
+
+			updates.put(cls.getName(), cls);
+			if (addedClasses != null) addedClasses.add(cls.getName());
+		}
+
+		Set<String> ret = new HashSet<>();
+
+		if (dirty) { // nothing analyzed yet, the next refresh covers everything
+			for (Map.Entry<String, ClassInstance> entry : updates.entrySet()) {
+				if (entry.getValue() != null) {
+					classes.put(entry.getKey(), entry.getValue());
+				} else {
+					classes.remove(entry.getKey());
+				}
 			}
 
-			if (futures.size() > 0) {
-				dirty = true;
+			for (ClassInstance cls : classes.values()) {
+				if (cls.isInput) ret.add(cls.getName());
 			}
 
-			for (Future<List<ClassInstance>> future : futures) {
-				for (ClassInstance node : future.get()) {
-					ClassInstance prev = classes.put(node.getName(), node);
+			return ret;
+		}
+
+		Map<String, ClassInstance> structuralUpdates = new HashMap<>();
 
-					if (prev != null) {
-						if (isInput && !prev.isInput) {
-							System.out.printf("duplicate input class %s, from %s and %s%n", node.getName(), prev.srcPath, node.srcPath);
-						} else if (!isInput && prev.isInput) { // give the input class priority
-							classes.put(prev.getName(), prev);
-						}
+		for (Map.Entry<String, ClassInstance> entry : updates.entrySet()) {
+			String name = entry.getKey();
+			ClassInstance cls = entry.getValue();
+			ClassInstance prev = classes.get(name);
+
+			if (cls == null && (prev == null || !prev.isInput)) continue; // not an input, nothing to remove
+			if (cls != null) ret.add(name);
+
+			if (cls != null && prev != null && prev.isInput && hasSameStructure(prev, cls)) {
+				replace(prev, cls);
+			} else {
+				structuralUpdates.put(name, cls);
+			}
+		}
+
+		// changed inputs may reference snapshot classes not needed before
+
+		List<ClassInstance> added = new ArrayList<>();
+
+		for (ClassInstance cls : updates.values()) {
+			if (cls != null) added.add(cls);
+		}
+
+		for (ClassInstance cls : materializeClassPath(added, false)) {
+			structuralUpdates.putIfAbsent(cls.getName(), cls);
+		}
+
+		if (!structuralUpdates.isEmpty()) {
+			updateHierarchy(structuralUpdates, ret);
+		}
+
+		return ret;
+	}
+
+	private static boolean hasSameStructure(ClassInstance a, ClassInstance b) {
+		if (a.getAccess() != b.getAccess()
+				|| !Objects.equals(a.getSuperName(), b.getSuperName())
+				|| !Arrays.equals(a.getInterfaces(), b.getInterfaces())
+				|| a.getMembers().size() != b.getMembers().size()) {
+			return false;
+		}
+
+		for (MemberInstance member : b.getMembers()) {
+			MemberInstance prev = a.getMember(member.type, member.getId());
+			if (prev == null || prev.access != member.access) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Swap in a class with the same structure, keeping the hierarchy and propagation results.
+	 */
+	private void replace(ClassInstance prev, ClassInstance cls) {
+		for (ClassInstance parent : prev.parents) {
+			parent.children.remove(prev);
+			parent.children.add(cls);
+			cls.parents.add(parent);
+		}
+
+		for (ClassInstance child : prev.children) {
+			child.parents.remove(prev);
+			child.parents.add(cls);
+			cls.children.add(child);
+		}
+
+		for (MemberInstance member : cls.getMembers()) {
+			MemberInstance prevMember = prev.getMember(member.type, member.getId());
+			member.forceSetNewName(prevMember.getNewName());
+			member.newNameOriginatingCls = prevMember.newNameOriginatingCls;
+
+			Set<String> memberConflicts = conflicts.remove(prevMember);
+			if (memberConflicts != null) conflicts.put(member, memberConflicts);
+		}
+
+		// subclasses may have cached prev's members as the resolution of inherited ones, which would leak the stale
+		// instances into e.g. the access fixes, drop the caches of all classes resolving through prev
+
+		Queue<ClassInstance> queue = new ArrayDeque<>();
+		Set<ClassInstance> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		queue.add(cls);
+		ClassInstance node;
+
+		while ((node = queue.poll()) != null) {
+			node.clearResolvedMembers();
+
+			for (ClassInstance child : node.children) {
+				if (visited.add(child)) queue.add(child);
+			}
+		}
+
+		classes.put(cls.getName(), cls);
+
+		if (computeFrames) {
+			mappedClasses.put(remapper.map(cls.getName()), cls);
+		}
+	}
+
+	/**
+	 * Apply changes affecting the class hierarchy or members, re-propagating within the connected hierarchy.
+	 *
+	 * @param updates New classes by name, null values for removals.
+	 * @param affectedInputs Receives the names of the input classes to apply again.
+	 */
+	private void updateHierarchy(Map<String, ClassInstance> updates, Set<String> affectedInputs) {
+		Set<ClassInstance> scope = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<ClassInstance> prevClasses = new ArrayList<>();
+
+		// unlink the previous classes, their previously connected hierarchy needs re-propagation
+
+		for (String name : updates.keySet()) {
+			ClassInstance prev = classes.get(name);
+			if (prev == null) continue;
+
+			collectConnected(prev, scope);
+			prevClasses.add(prev);
+
+			for (ClassInstance parent : prev.parents) {
+				parent.children.remove(prev);
+			}
+
+			for (ClassInstance child : prev.children) {
+				child.parents.remove(prev);
+			}
+		}
+
+		scope.removeAll(prevClasses);
+
+		// swap in the new classes and link them, including children referencing them by name
+
+		for (Map.Entry<String, ClassInstance> entry : updates.entrySet()) {
+			if (entry.getValue() != null) {
+				classes.put(entry.getKey(), entry.getValue());
+			} else {
+				classes.remove(entry.getKey());
+			}
+		}
+
+		for (ClassInstance node : classes.values()) {
+			if (updates.containsKey(node.getName())) {
+				link(node);
+				continue;
+			}
+
+			if (updates.containsKey(node.getSuperName())) {
+				link(node);
+			} else {
+				for (String iface : node.getInterfaces()) {
+					if (updates.containsKey(iface)) {
+						link(node);
+						break;
 					}
 				}
 			}
-		} catch (InterruptedException | ExecutionException e) {
-			throw new RuntimeException(e);
-		} finally {
+		}
+
+		for (ClassInstance cls : updates.values()) {
+			if (cls != null) collectConnected(cls, scope);
+		}
+
+		// reset and redo the propagation within the affected hierarchy
+
+		for (ClassInstance cls : scope) {
+			cls.clearResolvedMembers();
+
+			for (MemberInstance member : cls.getMembers()) {
+				member.forceSetNewName(null);
+				member.newNameOriginatingCls = null;
+			}
+		}
+
+		conflicts.keySet().removeIf(member -> scope.contains(member.cls) || prevClasses.contains(member.cls));
+		remapper.clearCaches();
+
+		propagate(scope);
+		mapClasses();
+
+		// any input referencing the affected hierarchy may resolve members differently now
+
+		Set<String> scopeNames = new HashSet<>(updates.keySet());
+
+		for (ClassInstance cls : scope) {
+			scopeNames.add(cls.getName());
+		}
+
+		for (ClassInstance cls : classes.values()) {
+			if (cls.isInput && !affectedInputs.contains(cls.getName()) && referencesAny(cls, scopeNames)) {
+				affectedInputs.add(cls.getName());
+			}
+		}
+	}
+
+	private static void collectConnected(ClassInstance cls, Set<ClassInstance> out) {
+		Queue<ClassInstance> queue = new ArrayDeque<>();
+		if (out.add(cls)) queue.add(cls);
+
+		while ((cls = queue.poll()) != null) {
+			for (ClassInstance node : cls.parents) {
+				if (out.add(node)) queue.add(node);
+			}
+
+			for (ClassInstance node : cls.children) {
+				if (out.add(node)) queue.add(node);
+			}
+		}
+	}
+
+	private static boolean referencesAny(ClassInstance cls, Set<String> classNames) {
+		if (classNames.contains(cls.getName())) return true;
+
+		ClassReader reader = new ClassReader(cls.data);
+		char[] buffer = new char[reader.getMaxStringLength()];
+
+		for (int i = 1, max = reader.getItemCount(); i < max; i++) {
+			int offset = reader.getItem(i);
+			if (offset == 0) continue; // unusable slot after long/double
+
+			if (reader.readByte(offset - 1) == constantClass
+					&& classNames.contains(reader.readUTF8(offset, buffer))) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Instantiate the class path snapshot classes relevant to the given classes.
+	 *
+	 * <p>These are the classes referenced from their constant pools, optionally the owners of mappings, and all super
+	 * types of those. Propagating a virtual method mapping may also go down from a class declaring the method into a
+	 * sub type declaring it again, and from there up into the sub type's other super types, e.g. an interface the sub
+	 * type implements the method for. Such sub types of the relevant classes get included with their super types as
+	 * well, until no more are found. Propagation doesn't change direction anywhere else, so leaving out the remaining
+	 * snapshot classes doesn't change the output.
+	 *
+	 * @return New class instances for snapshot classes not yet present.
+	 */
+	private List<ClassInstance> materializeClassPath(Collection<ClassInstance> sources, boolean includeMappingOwners) {
+		List<ClassInstance> ret = new ArrayList<>();
+		if (classPathSnapshots.isEmpty()) return ret;
+
+		Set<String> queued = new HashSet<>();
+
+		for (ClassInstance cls : sources) {
+			queued.add(cls.getName());
+			if (cls.data != null) collectReferencedNames(cls.data, queued);
+		}
+
+		if (includeMappingOwners) {
+			queued.addAll(classMap.keySet());
+
+			for (String id : methodMap.keySet()) {
+				queued.add(getClassName(id, MemberType.METHOD));
+			}
+
+			for (String id : fieldMap.keySet()) {
+				queued.add(getClassName(id, MemberType.FIELD));
+			}
+		}
+
+		Queue<String> queue = new ArrayDeque<>(queued);
+		materializeSuperTypes(queue, queued, ret);
+
+		// sub types declaring a mapped method where propagation coming down from a relevant class declaring it as well
+		// may turn around, these are the only missing links
+
+		Map<ClassPathSnapshot.ClassInfo, List<String>> candidates = new HashMap<>();
+
+		for (String id : methodMap.keySet()) {
+			String methodId = stripClassName(id, MemberType.METHOD);
+
+			for (ClassPathSnapshot snapshot : classPathSnapshots) {
+				for (ClassPathSnapshot.ClassInfo info : snapshot.getVirtualMethodDeclarers(methodId)) {
+					if (!queued.contains(info.name) && !classes.containsKey(info.name) && getSnapshotClass(info.name) == info) {
+						List<String> methodIds = candidates.computeIfAbsent(info, ignore -> new ArrayList<>());
+						if (!methodIds.contains(methodId)) methodIds.add(methodId);
+					}
+				}
+			}
+		}
+
+		boolean changed;
+
+		do {
+			changed = false;
+
+			for (Iterator<Map.Entry<ClassPathSnapshot.ClassInfo, List<String>>> it = candidates.entrySet().iterator(); it.hasNext(); ) {
+				Map.Entry<ClassPathSnapshot.ClassInfo, List<String>> entry = it.next();
+				ClassPathSnapshot.ClassInfo info = entry.getKey();
+
+				if (queued.contains(info.name)) {
+					it.remove();
+					continue;
+				}
+
+				for (String methodId : entry.getValue()) {
+					if (hasDeclaringSuperType(info, methodId, queued)) {
+						queued.add(info.name);
+						queue.add(info.name);
+						it.remove();
+						changed = true;
+						break;
+					}
+				}
+			}
+
+			materializeSuperTypes(queue, queued, ret);
+		} while (changed);
+
+		return ret;
+	}
+
+	/**
+	 * Instantiate the queued snapshot classes not yet present and queue their super types in turn.
+	 */
+	private void materializeSuperTypes(Queue<String> queue, Set<String> queued, List<ClassInstance> out) {
+		String name;
+
+		while ((name = queue.poll()) != null) {
+			ClassInstance cls = classes.get(name);
+
+			if (cls == null) {
+				ClassPathSnapshot.ClassInfo info = getSnapshotClass(name);
+				if (info == null) continue;
+
+				cls = info.materialize(this);
+				out.add(cls);
+			}
+
+			if (cls.getSuperName() != null && queued.add(cls.getSuperName())) queue.add(cls.getSuperName());
+
+			for (String iface : cls.getInterfaces()) {
+				if (queued.add(iface)) queue.add(iface);
+			}
+		}
+	}
+
+	/**
+	 * Determine whether a direct or indirect super type of a snapshot class among the given names declares a virtual
+	 * method.
+	 */
+	private boolean hasDeclaringSuperType(ClassPathSnapshot.ClassInfo cls, String methodId, Set<String> names) {
+		Queue<String> queue = new ArrayDeque<>();
+		Set<String> visited = new HashSet<>();
+		if (cls.superName != null) queue.add(cls.superName);
+		Collections.addAll(queue, cls.interfaces);
+		String name;
+
+		while ((name = queue.poll()) != null) {
+			if (!visited.add(name)) continue;
+
+			ClassInstance instance = classes.get(name);
+			String superName;
+			String[] interfaces;
+
+			if (instance != null) {
+				if (names.contains(name)) {
+					MemberInstance member = instance.getMember(MemberType.METHOD, methodId);
+					if (member != null && member.isVirtual()) return true;
+				}
+
+				superName = instance.getSuperName();
+				interfaces = instance.getInterfaces();
+			} else {
+				ClassPathSnapshot.ClassInfo info = getSnapshotClass(name);
+				if (info == null) continue;
+				if (names.contains(name) && info.hasVirtualMethod(methodId)) return true;
+
+				superName = info.superName;
+				interfaces = info.interfaces;
+			}
+
+			if (superName != null) queue.add(superName);
+			Collections.addAll(queue, interfaces);
+		}
+
+		return false;
+	}
+
+	private ClassPathSnapshot.ClassInfo getSnapshotClass(String name) {
+		for (ClassPathSnapshot snapshot : classPathSnapshots) {
+			ClassPathSnapshot.ClassInfo info = snapshot.get(name);
+			if (info != null) return info;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Collect the class names a class may refer to, from class constants and the object types in descriptors.
+	 *
+	 * <p>This over-approximates, strings merely looking like names are included as well.
+	 */
+	private static void collectReferencedNames(byte[] data, Set<String> out) {
+		ClassReader reader = new ClassReader(data);
+		char[] buffer = new char[reader.getMaxStringLength()];
+
+		for (int i = 1, max = reader.getItemCount(); i < max; i++) {
+			int offset = reader.getItem(i);
+			if (offset == 0 || reader.readByte(offset - 1) != constantUtf8) continue;
+
+			String str = readUtf8(data, offset, buffer);
+			out.add(str);
+
+			int start = str.indexOf('L');
+
+			while (start >= 0) {
+				int end = start + 1;
+
+				while (end < str.length() && str.charAt(end) != ';' && str.charAt(end) != '<') {
+					end++;
+				}
+
+				if (end == str.length()) break;
+				if (end > start + 1) out.add(str.substring(start + 1, end));
+
+				start = str.indexOf('L', end);
+			}
+		}
+	}
+
+	/**
+	 * Decode a CONSTANT_Utf8 entry's modified UTF-8 content, ClassReader only offers reading it by reference.
+	 */
+	private static String readUtf8(byte[] data, int offset, char[] buffer) {
+		int pos = offset + 2;
+		int end = pos + (((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff));
+		int len = 0;
+
+		while (pos < end) {
+			int c = data[pos++] & 0xff;
+
+			if ((c & 0x80) == 0) {
+				buffer[len++] = (char) c;
+			} else if ((c & 0xe0) == 0xc0) {
+				buffer[len++] = (char) (((c & 0x1f) << 6) | (data[pos++] & 0x3f));
+			} else {
+				buffer[len++] = (char) (((c & 0xf) << 12) | ((data[pos++] & 0x3f) << 6) | (data[pos++] & 0x3f));
+			}
+		}
+
+		return new String(buffer, 0, len);
+	}
+
+	private CompletableFuture<?> read(Path[] inputs, boolean isInput) {
+		long startTime = System.nanoTime();
+		Object phaseEvent = FlightRecorderEvents.beginPhase();
+		List<FileSystem> fsToClose = Collections.synchronizedList(new ArrayList<>());
+		List<ZipReader> readersToClose = new ArrayList<>();
+		List<ReadUnit> files = new ArrayList<>();
+		long totalSize = 0;
+
+		for (Path input : inputs) {
+			for (ReadUnit unit : collectFiles(input)) {
+				files.add(unit);
+				totalSize += unit.cost;
+			}
+		}
+
+		// split jars too large to be read by a single thread without delaying the phase's end and batch class files
+		long splitSize = Math.max(totalSize / threadCount, minSplitSize);
+		long chunkSize = Math.max(totalSize / threadCount / 4, minChunkSize);
+		List<ReadUnit> units = new ArrayList<>(files.size());
+		List<Path> batch = new ArrayList<>();
+		Path batchSrcPath = null;
+		long batchSize = 0;
+
+		for (ReadUnit file : files) {
+			boolean isClass = file.file.toString().endsWith(".class");
+
+			if (!batch.isEmpty() && (!isClass || !file.srcPath.equals(batchSrcPath) || batchSize >= chunkSize)) {
+				units.add(new ReadUnit(batchSrcPath, batchSrcPath, batch, batchSize));
+				batch = new ArrayList<>();
+				batchSize = 0;
+			}
+
+			if (isClass) {
+				batch.add(file.file);
+				batchSrcPath = file.srcPath;
+				batchSize += file.cost;
+			} else if (file.cost > splitSize) {
+				units.addAll(splitJar(file, chunkSize, readersToClose));
+			} else {
+				units.add(file);
+			}
+		}
+
+		if (!batch.isEmpty()) units.add(new ReadUnit(batchSrcPath, batchSrcPath, batch, batchSize));
+
+		ReadProgress progress = progressListener != null ? new ReadProgress(files.size()) : null;
+		LongAccumulator lastTaskStart = new LongAccumulator(Math::max, startTime);
+		long readOrder = (long) readOperations.incrementAndGet() << 32;
+
+		// the original order decides between duplicate classes, later units of later read operations win
+		for (int i = 0; i < units.size(); i++) {
+			units.get(i).readOrder = readOrder + i;
+		}
+
+		// start the most expensive units first
+		units.sort(Comparator.comparingLong((ReadUnit unit) -> unit.cost).reversed());
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[units.size()];
+
+		for (int i = 0; i < futures.length; i++) {
+			futures[i] = read(units.get(i), isInput, true, fsToClose, progress, lastTaskStart);
+		}
+
+		if (futures.length > 0) {
+			dirty = true;
+		}
+
+		return CompletableFuture.allOf(futures).whenComplete((res, exc) -> {
+			metrics.addWallTime(Phase.READ, startTime);
+			metrics.addTailTime(Phase.READ, lastTaskStart.get());
+			FlightRecorderEvents.endPhase(phaseEvent, Phase.READ);
+
 			synchronized (fsToClose) {
 				for (FileSystem fs : fsToClose) {
 					try {
@@ -250,59 +988,188 @@ public class TinyRemapper {
 					} catch (IOException e) { }
 				}
 			}
+
+			for (ZipReader reader : readersToClose) {
+				try {
+					reader.close();
+				} catch (IOException e) { }
+			}
+
+			printDuplicateClasses();
+		});
+	}
+
+	/**
+	 * Add a class read by a read task, deciding between duplicates atomically.
+	 *
+	 * <p>Input classes take precedence over class path classes, otherwise the class later in the read order wins. Only an
+	 * input replacing an earlier read class path class is reported as duplicate.
+	 */
+	private void registerClass(ClassInstance cls, long readOrder) {
+		cls.readOrder = readOrder;
+
+		classes.compute(cls.getName(), (name, prev) -> {
+			if (prev == null) return cls;
+
+			if (prev.isInput != cls.isInput) {
+				ClassInstance input = cls.isInput ? cls : prev;
+				ClassInstance classPath = cls.isInput ? prev : cls;
+				// only reported for inputs read after the class path, class path read later is expected to overlap
+				if (input.readOrder > classPath.readOrder) {
+					duplicateClasses.add(String.format("duplicate input class %s, from %s and %s", name, classPath.srcPath, input.srcPath));
+				}
+
+				return input;
+			}
+
+			return cls.readOrder >= prev.readOrder ? cls : prev;
+		});
+	}
+
+	private void printDuplicateClasses() {
+		if (duplicateClasses.isEmpty()) return;
+
+		List<String> messages = new ArrayList<>();
+
+		for (String message; (message = duplicateClasses.poll()) != null; ) {
+			messages.add(message);
+		}
+
+		Collections.sort(messages);
+
+		for (String message : messages) {
+			System.out.println(message);
 		}
 	}
 
-	private List<Future<List<ClassInstance>>> read(final Path file, boolean isInput, boolean saveData, final List<FileSystem> fsToClose) {
+	/**
+	 * Find the jars and class files to read within a file or directory.
+	 */
+	private static List<ReadUnit> collectFiles(Path input) {
+		List<ReadUnit> ret = new ArrayList<>();
+
 		try {
-			return read(file, isInput, file, saveData, fsToClose);
+			Files.walkFileTree(input, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					String name = file.getFileName().toString();
+
+					if (name.endsWith(".jar") ||
+							name.endsWith(".zip") ||
+							name.endsWith(".class")) {
+						ret.add(new ReadUnit(file, input, null, null, null, attrs.size(), null));
+					}
+
+					return FileVisitResult.CONTINUE;
+				}
+			});
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
+
+		return ret;
 	}
 
-	private List<Future<List<ClassInstance>>> read(final Path file, boolean isInput, final Path srcPath, final boolean saveData, final List<FileSystem> fsToClose) throws IOException {
-		List<Future<List<ClassInstance>>> ret = new ArrayList<>();
+	/**
+	 * Split a jar into units of about chunkSize compressed bytes, each reading a subset of its class entries.
+	 */
+	private static List<ReadUnit> splitJar(ReadUnit jar, long chunkSize, List<ZipReader> readersToClose) {
+		ZipReader reader;
 
-		Files.walkFileTree(file, new SimpleFileVisitor<Path>() {
-			@Override
-			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-				String name = file.getFileName().toString();
-
-				if (name.endsWith(".jar") ||
-						name.endsWith(".zip") ||
-						name.endsWith(".class")) {
-					ret.add(threadPool.submit(new Callable<List<ClassInstance>>() {
-						@Override
-						public List<ClassInstance> call() {
-							try {
-								return readFile(file, isInput, srcPath, saveData, fsToClose);
-							} catch (URISyntaxException e) {
-								throw new RuntimeException(e);
-							} catch (IOException e) {
-								System.out.println(file.toAbsolutePath());
-								e.printStackTrace();
-								return Collections.emptyList();
-							}
-						}
-					}));
-				}
+		try {
+			reader = new ZipReader(jar.file);
+		} catch (IOException e) { // let the regular read report it
+			return Collections.singletonList(jar);
+		}
+
+		readersToClose.add(reader);
 
-				return FileVisitResult.CONTINUE;
+		AtomicInteger pendingChunks = new AtomicInteger();
+		List<ReadUnit> ret = new ArrayList<>();
+		List<ZipReader.Entry> entries = new ArrayList<>();
+		long size = 0;
+
+		for (ZipReader.Entry entry : reader.getEntries()) {
+			if (entry.isDirectory() || !entry.name.endsWith(".class")) continue;
+
+			entries.add(entry);
+			size += entry.compressedSize;
+
+			if (size >= chunkSize) {
+				ret.add(new ReadUnit(jar.file, jar.srcPath, null, reader, entries, size, pendingChunks));
+				entries = new ArrayList<>();
+				size = 0;
 			}
-		});
+		}
+
+		if (!entries.isEmpty()) ret.add(new ReadUnit(jar.file, jar.srcPath, null, reader, entries, size, pendingChunks));
+		if (ret.isEmpty()) return Collections.singletonList(jar);
+
+		pendingChunks.set(ret.size());
 
 		return ret;
 	}
 
-	private List<ClassInstance> readFile(Path file, boolean isInput, final Path srcPath, boolean saveData, List<FileSystem> fsToClose) throws IOException, URISyntaxException {
+	private CompletableFuture<?> read(final ReadUnit unit, boolean isInput, final boolean saveData, final List<FileSystem> fsToClose, ReadProgress progress, LongAccumulator lastTaskStart) {
+		return CompletableFuture.runAsync(() -> {
+			lastTaskStart.accumulate(System.nanoTime());
+			checkCancelled();
+
+			long startCpuTime = RemapMetrics.getCpuTime();
+			Object event = FlightRecorderEvents.beginRead();
+			List<ClassInstance> classes = Collections.emptyList();
+
+			try {
+				classes = readFile(unit, isInput, saveData, fsToClose, progress);
+
+				for (ClassInstance cls : classes) {
+					registerClass(cls, unit.readOrder);
+				}
+			} catch (URISyntaxException e) {
+				throw new RuntimeException(e);
+			} catch (IOException e) {
+				System.out.println(unit.file.toAbsolutePath());
+				e.printStackTrace();
+			} finally {
+				metrics.addCpuTime(Phase.READ, startCpuTime);
+				FlightRecorderEvents.endRead(event, unit.file, isInput, classes.size());
+				if (progress != null) progress.update(unit.complete(), 0);
+			}
+		}, getIoExecutor());
+	}
+
+	private List<ClassInstance> readFile(ReadUnit unit, boolean isInput, boolean saveData, List<FileSystem> fsToClose, ReadProgress progress) throws IOException, URISyntaxException {
 		List<ClassInstance> ret = new ArrayList<ClassInstance>();
+		Path srcPath = unit.srcPath;
+
+		if (unit.classFiles != null) {
+			for (Path file : unit.classFiles) {
+				checkCancelled();
+
+				try {
+					ClassInstance res = analyze(isInput, srcPath, Files.readAllBytes(file), saveData);
+					if (res != null) ret.add(res);
+				} catch (IOException e) {
+					System.out.println(file.toAbsolutePath());
+					e.printStackTrace();
+				}
 
-		if (file.toString().endsWith(".class")) {
-			ClassInstance res = analyze(isInput, srcPath, Files.readAllBytes(file), saveData);
+				if (progress != null) progress.update(0, 1);
+			}
+		} else if (unit.entries != null) {
+			for (ZipReader.Entry entry : unit.entries) {
+				checkCancelled();
+
+				ClassInstance res = analyze(isInput, srcPath, unit.reader.read(entry), saveData);
+				if (res != null) ret.add(res);
+				if (progress != null) progress.update(0, 1);
+			}
+		} else if (unit.file.toString().endsWith(".class")) {
+			ClassInstance res = analyze(isInput, srcPath, Files.readAllBytes(unit.file), saveData);
 			if (res != null) ret.add(res);
+			if (progress != null) progress.update(0, 1);
 		} else {
-			URI uri = new URI("jar:"+file.toUri().toString());
+			URI uri = new URI("jar:"+unit.file.toUri().toString());
 			FileSystem fs = FileSystemHandler.open(uri);
 			fsToClose.add(fs);
 
@@ -310,8 +1177,11 @@ public class TinyRemapper {
 				@Override
 				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
 					if (file.toString().endsWith(".class")) {
+						checkCancelled();
+
 						ClassInstance res = analyze(isInput, srcPath, Files.readAllBytes(file), saveData);
 						if (res != null) ret.add(res);
+						if (progress != null) progress.update(0, 1);
 					}
 
 					return FileVisitResult.CONTINUE;
@@ -322,7 +1192,74 @@ public class TinyRemapper {
 		return ret;
 	}
 
-	private ClassInstance analyze(boolean isInput, Path srcPath, byte[] data, boolean saveData) {
+	/**
+	 * A file to read, a batch of class files from a directory or a chunk of a large jar's class entries.
+	 */
+	private static final class ReadUnit {
+		ReadUnit(Path dir, Path srcPath, List<Path> classFiles, long cost) {
+			this(dir, srcPath, classFiles, null, null, cost, null);
+		}
+
+		ReadUnit(Path file, Path srcPath, List<Path> classFiles, ZipReader reader, List<ZipReader.Entry> entries, long cost, AtomicInteger pendingChunks) {
+			this.file = file;
+			this.srcPath = srcPath;
+			this.classFiles = classFiles;
+			this.reader = reader;
+			this.entries = entries;
+			this.cost = cost;
+			this.pendingChunks = pendingChunks;
+		}
+
+		/**
+		 * Mark the unit as read.
+		 *
+		 * @return Number of files read completely now.
+		 */
+		int complete() {
+			if (classFiles != null) return classFiles.size();
+
+			return pendingChunks == null || pendingChunks.decrementAndGet() == 0 ? 1 : 0;
+		}
+
+		final Path file; // input directory for a batch of class files
+		final Path srcPath;
+		final List<Path> classFiles; // class files for a batch, null otherwise
+		final ZipReader reader;
+		final List<ZipReader.Entry> entries; // class entries for a chunk, null to read the whole file
+		final long cost; // in compressed bytes
+		final AtomicInteger pendingChunks;
+		long readOrder;
+	}
+
+	/**
+	 * Progress state of a read operation, shared by its tasks.
+	 */
+	private final class ReadProgress {
+		ReadProgress(int filesTotal) {
+			this.filesTotal = filesTotal;
+		}
+
+		void update(int files, int classes) {
+			// count classes first so the last file's update sees all of them
+			long classesRead = this.classesRead.addAndGet(classes);
+			int filesDone = this.filesDone.addAndGet(files);
+			boolean isLast = files > 0 && filesDone == filesTotal;
+
+			if (throttle.tryUpdate(isLast)) {
+				progressListener.onRead(filesDone, filesTotal, isLast ? this.classesRead.get() : classesRead);
+			}
+		}
+
+		private final int filesTotal;
+		private final AtomicInteger filesDone = new AtomicInteger();
+		private final AtomicLong classesRead = new AtomicLong();
+		private final ProgressThrottle throttle = new ProgressThrottle(progressInterval);
+	}
+
+	ClassInstance analyze(boolean isInput, Path srcPath, byte[] data, boolean saveData) {
+		metrics.increment(Counter.CLASSES_READ);
+		metrics.add(Counter.BYTES_READ, data.length);
+
 		ClassReader reader = new ClassReader(data);
 		if ((reader.getAccess() & Opcodes.ACC_MODULE) != 0) return null; // special attribute for module-info.class, can't be a regular class
 
@@ -357,15 +1294,28 @@ public class TinyRemapper {
 	}
 
 	String mapClass(String className) {
+		if (!mappingsLoaded) loadMappings(); // may be used before apply, e.g. by OutputConsumerPath
+
 		String ret = classMap.get(className);
 
 		return ret != null ? ret : className;
 	}
 
-	private void loadMappings() {
+	synchronized void loadMappings() {
+		if (mappingsLoaded) return;
+
+		long startTime = System.nanoTime();
+		long startCpuTime = RemapMetrics.getCpuTime();
+		Object event = FlightRecorderEvents.beginPhase();
+
 		for (IMappingProvider provider : mappingProviders) {
 			provider.load(classMap, fieldMap, methodMap, localMap);
 		}
+
+		mappingsLoaded = true;
+		metrics.add(Counter.MAPPING_ENTRIES, classMap.size() + fieldMap.size() + methodMap.size() + localMap.size());
+		metrics.addTime(Phase.LOAD_MAPPINGS, startTime, startCpuTime);
+		FlightRecorderEvents.endPhase(event, Phase.LOAD_MAPPINGS);
 	}
 
 	private void checkClassMappings() {
@@ -394,67 +1344,138 @@ public class TinyRemapper {
 		}
 	}
 
-	private void merge() {
+	private void mapClasses() {
+		mappedClasses.clear();
+		commonSuperClasses.clear();
+
+		if (!computeFrames) return;
+
+		for (ClassInstance node : classes.values()) {
+			mappedClasses.put(remapper.map(node.getName()), node);
+		}
+	}
+
+	ClassInstance getMappedClass(String mappedName) {
+		return mappedClasses.get(mappedName);
+	}
+
+	void merge() {
 		for (ClassInstance node : classes.values()) {
-			assert node.getSuperName() != null;
+			link(node);
+		}
+	}
+
+	private void link(ClassInstance node) {
+		assert node.getSuperName() != null;
+
+		ClassInstance parent = classes.get(node.getSuperName());
+
+		if (parent != null) {
+			node.parents.add(parent);
+			parent.children.add(node);
+		}
 
-			ClassInstance parent = classes.get(node.getSuperName());
+		for (String iface : node.getInterfaces()) {
+			parent = classes.get(iface);
 
 			if (parent != null) {
 				node.parents.add(parent);
 				parent.children.add(node);
 			}
-
-			for (String iface : node.getInterfaces()) {
-				parent = classes.get(iface);
-
-				if (parent != null) {
-					node.parents.add(parent);
-					parent.children.add(node);
-				}
-			}
 		}
 	}
 
-	private void propagate() {
-		List<Future<?>> futures = new ArrayList<>();
+	/**
+	 * Propagate the member mappings along the class hierarchy.
+	 *
+	 * @param scope Classes to propagate the mappings of, null for all. The members of the classes connected to them in
+	 *              the hierarchy have to be included as propagation may reach them.
+	 */
+	void propagate(Set<ClassInstance> scope) {
+		long startTime = System.nanoTime();
+		Object event = FlightRecorderEvents.beginPhase();
+		List<Propagation> propagations = new ArrayList<>();
 		List<Map.Entry<String, String>> tasks = new ArrayList<>();
 		int maxTasks = methodMap.size() / threadCount / 4;
+		Set<String> scopeNames = null;
+
+		if (scope != null) {
+			scopeNames = new HashSet<>();
+
+			for (ClassInstance cls : scope) {
+				scopeNames.add(cls.getName());
+			}
+		}
 
 		for (Map.Entry<String, String> entry : methodMap.entrySet()) {
+			if (scopeNames != null && !scopeNames.contains(getClassName(entry.getKey(), MemberType.METHOD))) continue;
+
 			tasks.add(entry);
 
 			if (tasks.size() >= maxTasks) {
-				futures.add(threadPool.submit(new Propagation(MemberType.METHOD, tasks)));
+				propagations.add(new Propagation(MemberType.METHOD, tasks));
 				tasks.clear();
 			}
 		}
 
-		futures.add(threadPool.submit(new Propagation(MemberType.METHOD, tasks)));
+		propagations.add(new Propagation(MemberType.METHOD, tasks));
 		tasks.clear();
 
 		for (Map.Entry<String, String> entry : fieldMap.entrySet()) {
+			if (scopeNames != null && !scopeNames.contains(getClassName(entry.getKey(), MemberType.FIELD))) continue;
+
 			tasks.add(entry);
 
 			if (tasks.size() >= maxTasks) {
-				futures.add(threadPool.submit(new Propagation(MemberType.FIELD, tasks)));
+				propagations.add(new Propagation(MemberType.FIELD, tasks));
 				tasks.clear();
 			}
 		}
 
-		futures.add(threadPool.submit(new Propagation(MemberType.FIELD, tasks)));
+		propagations.add(new Propagation(MemberType.FIELD, tasks));
 		tasks.clear();
 
-		waitForAll(futures);
+		// the total is needed upfront for reporting progress
+		ExecutorService threadPool = getThreadPool();
+		List<Future<?>> futures = new ArrayList<>(propagations.size());
+		Progress progress = null;
+
+		if (progressListener != null) {
+			long total = 0;
+
+			for (Propagation propagation : propagations) {
+				total += propagation.tasks.size();
+			}
 
-		handleConflicts();
+			progress = new Progress(Phase.PROPAGATE, total);
+		}
+
+		LongAccumulator lastTaskStart = new LongAccumulator(Math::max, startTime);
+
+		for (Propagation propagation : propagations) {
+			propagation.progress = progress;
+			propagation.lastTaskStart = lastTaskStart;
+			futures.add(threadPool.submit(propagation));
+		}
+
+		waitForAll(futures);
+		metrics.addWallTime(Phase.PROPAGATE, startTime);
+		metrics.addTailTime(Phase.PROPAGATE, lastTaskStart.get());
+		FlightRecorderEvents.endPhase(event, Phase.PROPAGATE);
+
+		startTime = System.nanoTime();
+		long startCpuTime = RemapMetrics.getCpuTime();
+		event = FlightRecorderEvents.beginPhase();
+		handleConflicts(scope);
+		metrics.addTime(Phase.HANDLE_CONFLICTS, startTime, startCpuTime);
+		FlightRecorderEvents.endPhase(event, Phase.HANDLE_CONFLICTS);
 	}
 
-	private void handleConflicts() {
+	private void handleConflicts(Set<ClassInstance> scope) {
 		Set<String> testSet = new HashSet<>();
 		boolean targetNameCheckFailed = false;
 
-		for (ClassInstance cls : classes.values()) {
+		for (ClassInstance cls : scope != null ? scope : classes.values()) {
 			for (MemberInstance member : cls.getMembers()) {
 				String name = member.getNewName();
 				if (name == null) name = member.name;
@@ -545,54 +1566,141 @@ public class TinyRemapper {
 		}
 
 		if (!conflicts.isEmpty() && !ignoreConflicts || unfixableConflicts || targetNameCheckFailed) {
-			if (ignoreConflicts || targetNameCheckFailed) System.out.println("There were unfixable conflicts.");
-
-			System.exit(1);
+			throw new MappingConflictException(ignoreConflicts || targetNameCheckFailed ? "there were unfixable conflicts" : "there were mapping conflicts");
 		}
 	}
 
 	public void apply(final BiConsumer<String, byte[]> outputConsumer) {
+		apply(outputConsumer, (Collection<String>) null);
+	}
+
+	/**
+	 * Remap and output only the specified input classes, e.g. the ones returned by {@link #updateInputs}.
+	 *
+	 * <p>With fixPackageAccess all input classes still get checked, classes requiring access fixes are always included.
+	 *
+	 * @param inputClasses Names of the input classes to apply, null for all.
+	 * @throws MappingConflictException if the mappings cause conflicts.
+	 */
+	public void apply(final BiConsumer<String, byte[]> outputConsumer, Collection<String> inputClasses) {
 		refresh();
 
-		Map<ClassInstance, byte[]> outputBuffer;
-		BiConsumer<ClassInstance, byte[]> immediateOutputConsumer;
+		ExecutorService threadPool = getThreadPool();
+		List<Future<?>> futures = new ArrayList<>();
+		List<ClassInstance> inputs = null;
 
-		if (fixPackageAccess) {
-			outputBuffer = new ConcurrentHashMap<>();
-			immediateOutputConsumer = outputBuffer::put;
-		} else {
-			outputBuffer = null;
-			immediateOutputConsumer = (cls, data) -> outputConsumer.accept(mapClass(cls.getName()), data);
+		if (fixPackageAccess || inputClasses == null) {
+			inputs = new ArrayList<>();
+
+			for (ClassInstance cls : classes.values()) {
+				if (cls.isInput) inputs.add(cls);
+			}
+
+			inputs.sort(applyCostComparator);
 		}
 
-		List<Future<?>> futures = new ArrayList<>();
+		if (fixPackageAccess) {
+			// determine all required access changes upfront so they can be applied while remapping
 
-		for (final ClassInstance cls : classes.values()) {
-			if (!cls.isInput) continue;
+			long startTime = System.nanoTime();
+			Object event = FlightRecorderEvents.beginPhase();
+			LongAccumulator lastTaskStart = new LongAccumulator(Math::max, startTime);
 
-			futures.add(threadPool.submit(() -> immediateOutputConsumer.accept(cls, apply(cls))));
-		}
+			for (final ClassInstance cls : inputs) {
+				futures.add(threadPool.submit(() -> {
+					lastTaskStart.accumulate(System.nanoTime());
+					checkCancelled();
 
-		waitForAll(futures);
+					long startCpuTime = RemapMetrics.getCpuTime();
+					checkPackageAccess(cls);
+					metrics.addCpuTime(Phase.CHECK_ACCESS, startCpuTime);
+				}));
+			}
 
-		boolean needsFixes = !classesToMakePublic.isEmpty() || !membersToMakePublic.isEmpty();
+			waitForAll(futures);
+			futures.clear();
+			printInvalidAccesses();
+			metrics.addWallTime(Phase.CHECK_ACCESS, startTime);
+			metrics.addTailTime(Phase.CHECK_ACCESS, lastTaskStart.get());
+			FlightRecorderEvents.endPhase(event, Phase.CHECK_ACCESS);
+			metrics.add(Counter.ACCESS_FIXES, classesToMakePublic.size() + membersToMakePublic.size());
 
-		if (fixPackageAccess) {
-			if (needsFixes) {
+			if (!classesToMakePublic.isEmpty() || !membersToMakePublic.isEmpty()) {
 				System.out.printf("Fixing access for %d classes and %d members.%n", classesToMakePublic.size(), membersToMakePublic.size());
 			}
+		}
+
+		List<ClassInstance> targets;
+
+		if (inputClasses == null) {
+			targets = inputs;
+		} else {
+			Set<ClassInstance> selected = Collections.newSetFromMap(new IdentityHashMap<>());
+
+			for (String name : inputClasses) {
+				ClassInstance cls = classes.get(name);
+				if (cls != null && cls.isInput) selected.add(cls);
+			}
 
-			for (Map.Entry<ClassInstance, byte[]> entry : outputBuffer.entrySet()) {
-				ClassInstance cls = entry.getKey();
-				byte[] data = entry.getValue();
+			// access fixes may be caused by classes outside of inputClasses, class path owners aren't output either way
+			for (ClassInstance cls : classesToMakePublic) {
+				if (cls.isInput) selected.add(cls);
+			}
 
-				if (needsFixes) {
-					data = fixClass(cls, data);
-				}
+			for (MemberInstance member : membersToMakePublic) {
+				if (member.cls.isInput) selected.add(member.cls);
+			}
 
-				outputConsumer.accept(mapClass(cls.getName()), data);
+			targets = new ArrayList<>(selected);
+			targets.sort(applyCostComparator);
+		}
+
+		if (classCache != null && extraRemapper == null && (fixPackageAccess || !checkPackageAccess)) {
+			cacheStateHash = computeCacheStateHash();
+		} else {
+			cacheStateHash = null;
+		}
+
+		long startTime = System.nanoTime();
+		Object event = FlightRecorderEvents.beginPhase();
+		Progress progress = progressListener != null ? new Progress(Phase.WRITE, targets.size()) : null;
+		LongAccumulator lastTaskStart = new LongAccumulator(Math::max, startTime);
+		ExecutorService ioExecutor = getIoExecutor();
+
+		// the targets are sorted by decreasing cost, starting the largest classes first avoids a long tail
+		if (outputBufferLimit > 0) {
+			applyBuffered(outputConsumer, targets, progress, lastTaskStart);
+		} else if (ioExecutor != threadPool) {
+			for (final ClassInstance cls : targets) {
+				futures.add(CompletableFuture.supplyAsync(() -> {
+					lastTaskStart.accumulate(System.nanoTime());
+					return apply(cls);
+				}, threadPool).thenAcceptAsync(data -> write(outputConsumer, mapClass(cls.getName()), data, progress), ioExecutor));
+			}
+
+			waitForAll(futures);
+		} else {
+			for (final ClassInstance cls : targets) {
+				futures.add(threadPool.submit(() -> {
+					lastTaskStart.accumulate(System.nanoTime());
+					write(outputConsumer, mapClass(cls.getName()), apply(cls), progress);
+				}));
 			}
 
+			waitForAll(futures);
+		}
+
+		metrics.addWallTime(Phase.APPLY, startTime);
+		metrics.addTailTime(Phase.APPLY, lastTaskStart.get());
+		FlightRecorderEvents.endPhase(event, Phase.APPLY);
+
+		printInvalidAccesses();
+
+		if (classCache != null) classCache.trim();
+
+		boolean needsFixes = !classesToMakePublic.isEmpty() || !membersToMakePublic.isEmpty();
+
+		if (fixPackageAccess) {
 			classesToMakePublic.clear();
 			membersToMakePublic.clear();
 		} else if (needsFixes) {
@@ -600,21 +1708,270 @@ public class TinyRemapper {
 		}
 	}
 
+	/**
+	 * Remap on the thread pool while passing the output to the consumer from the calling thread.
+	 *
+	 * <p>The classes being remapped or waiting to be consumed are limited to outputBufferLimit bytes. The calling thread
+	 * only submits a class once its input size fits into the remaining buffer space and consumes the output in between,
+	 * so the remapping threads never block holding a remapped class. The remapped size isn't known upfront, it usually
+	 * differs from the input size only by the renamed names.
+	 */
+	private void applyBuffered(final BiConsumer<String, byte[]> outputConsumer, Collection<ClassInstance> targets, Progress progress, LongAccumulator lastTaskStart) {
+		final long limit = outputBufferLimit;
+		final BlockingQueue<PendingOutput> queue = new LinkedBlockingQueue<>();
+		ExecutorService threadPool = getThreadPool();
+		Iterator<ClassInstance> it = targets.iterator();
+		ClassInstance next = null;
+		long nextSize = 0;
+		long buffered = 0;
+		int remaining = 0;
+
+		IBatchOutputConsumer batchConsumer = outputConsumer instanceof IBatchOutputConsumer ? (IBatchOutputConsumer) outputConsumer : null;
+		List<PendingOutput> pending = new ArrayList<>();
+		Map<String, byte[]> batch = new HashMap<>();
+		Throwable error = null;
+
+		try {
+			for (;;) {
+				// submit as many classes as fit into the buffer, stop submitting after a failure
+
+				while (error == null && (next != null || it.hasNext())) {
+					if (next == null) {
+						next = it.next();
+						nextSize = Math.min(getApplyCost(next), limit); // allow single classes exceeding the limit
+					}
+
+					if (buffered > 0 && buffered + nextSize > limit) break;
+
+					final ClassInstance cls = next;
+					final long size = nextSize;
+
+					threadPool.execute(() -> {
+						PendingOutput output;
+						lastTaskStart.accumulate(System.nanoTime());
+
+						try {
+							output = new PendingOutput(mapClass(cls.getName()), apply(cls), size, null);
+						} catch (Throwable t) {
+							output = new PendingOutput(null, null, size, t);
+						}
+
+						queue.add(output);
+					});
+
+					buffered += size;
+					remaining++;
+					next = null;
+				}
+
+				if (remaining == 0) break;
+
+				// consume the available output, freeing its buffer space
+
+				pending.add(queue.take());
+				queue.drainTo(pending);
+				remaining -= pending.size();
+
+				for (PendingOutput output : pending) {
+					if (output.error != null) {
+						if (error == null) error = output.error;
+					} else if (error == null) { // stop writing after a failure, but keep draining the submitted classes
+						try {
+							if (batchConsumer != null) {
+								batch.put(output.name, output.data);
+							} else {
+								write(outputConsumer, output.name, output.data, progress);
+							}
+						} catch (Throwable t) {
+							error = t;
+						}
+					}
+
+					buffered -= output.size;
+				}
+
+				if (!batch.isEmpty()) {
+					try {
+						writeBatch(batchConsumer, batch, progress);
+					} catch (Throwable t) {
+						if (error == null) error = t;
+					}
+
+					batch.clear();
+				}
+
+				pending.clear();
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+
+		if (error instanceof CancellationException) throw (CancellationException) error;
+		if (error != null) throw new RuntimeException(error);
+	}
+
+	private void write(BiConsumer<String, byte[]> outputConsumer, String name, byte[] data, Progress progress) {
+		long startTime = System.nanoTime();
+		long startCpuTime = RemapMetrics.getCpuTime();
+
+		outputConsumer.accept(name, data);
+
+		metrics.addTime(Phase.WRITE, startTime, startCpuTime);
+		metrics.increment(Counter.CLASSES_WRITTEN);
+		metrics.add(Counter.BYTES_WRITTEN, data.length);
+		if (progress != null) progress.update(1);
+	}
+
+	private void writeBatch(IBatchOutputConsumer outputConsumer, Map<String, byte[]> classes, Progress progress) {
+		long startTime = System.nanoTime();
+		long startCpuTime = RemapMetrics.getCpuTime();
+
+		outputConsumer.acceptBatch(classes);
+
+		metrics.addTime(Phase.WRITE, startTime, startCpuTime);
+		metrics.add(Counter.CLASSES_WRITTEN, classes.size());
+
+		for (byte[] data : classes.values()) {
+			metrics.add(Counter.BYTES_WRITTEN, data.length);
+		}
+
+		if (progress != null) progress.update(classes.size());
+	}
+
+	private static final class PendingOutput {
+		PendingOutput(String name, byte[] data, long size, Throwable error) {
+			this.name = name;
+			this.data = data;
+			this.size = size;
+			this.error = error;
+		}
+
+		final String name;
+		final byte[] data;
+		final long size; // reserved buffer space
+		final Throwable error;
+	}
+
+	private void printInvalidAccesses() {
+		if (invalidAccesses.isEmpty()) return;
+
+		List<String> messages = new ArrayList<>(invalidAccesses);
+		invalidAccesses.clear();
+		Collections.sort(messages);
+
+		for (String message : messages) {
+			System.out.println(message);
+		}
+	}
+
+	/**
+	 * Check all field and method references in the constant pool of cls for accessibility after remapping.
+	 *
+	 * <p>This is a superset of the references used by the field and method instructions, but doesn't require visiting
+	 * the class' code.
+	 */
+	private void checkPackageAccess(ClassInstance cls) {
+		ClassReader reader = new ClassReader(cls.data);
+		char[] buffer = new char[reader.getMaxStringLength()];
+
+		for (int i = 1, max = reader.getItemCount(); i < max; i++) {
+			int offset = reader.getItem(i);
+			if (offset == 0) continue; // unusable slot after long/double
+
+			int tag = reader.readByte(offset - 1);
+			MemberType type;
+
+			if (tag == constantFieldRef) {
+				type = MemberType.FIELD;
+			} else if (tag == constantMethodRef || tag == constantInterfaceMethodRef) {
+				type = MemberType.METHOD;
+			} else {
+				continue;
+			}
+
+			String owner = reader.readClass(offset, buffer);
+			int nameTypeOffset = reader.getItem(reader.readUnsignedShort(offset + 2));
+			String name = reader.readUTF8(nameTypeOffset, buffer);
+			String desc = reader.readUTF8(nameTypeOffset + 2, buffer);
+
+			remapper.checkPackageAccess(cls.getName(), owner, name, desc, type);
+		}
+	}
+
 	private void refresh() {
 		if (dirty) {
+			remapper.clearCaches();
 			loadMappings();
+
+			long startTime = System.nanoTime();
+			long startCpuTime = RemapMetrics.getCpuTime();
+			Object event = FlightRecorderEvents.beginPhase();
 			checkClassMappings();
+			metrics.addTime(Phase.CHECK_CLASS_MAPPINGS, startTime, startCpuTime);
+			FlightRecorderEvents.endPhase(event, Phase.CHECK_CLASS_MAPPINGS);
+
+			for (ClassInstance cls : materializeClassPath(new ArrayList<>(classes.values()), true)) {
+				classes.put(cls.getName(), cls);
+			}
+
+			startTime = System.nanoTime();
+			startCpuTime = RemapMetrics.getCpuTime();
+			event = FlightRecorderEvents.beginPhase();
 			merge();
-			propagate();
+			metrics.addTime(Phase.MERGE, startTime, startCpuTime);
+			FlightRecorderEvents.endPhase(event, Phase.MERGE);
+
+			propagate(null);
+			mapClasses();
 
 			dirty = false;
 		}
 	}
 
 	private byte[] apply(final ClassInstance cls) {
+		checkCancelled();
+
+		long startCpuTime = RemapMetrics.getCpuTime();
+		Object event = FlightRecorderEvents.beginApply();
+
+		byte[] ret = remapClass(cls);
+
+		metrics.addCpuTime(Phase.APPLY, startCpuTime);
+		FlightRecorderEvents.endApply(event, cls.getName(), ret.length);
+
+		return ret;
+	}
+
+	private byte[] remapClass(final ClassInstance cls) {
+		byte[] cacheKey = null;
+		List<String[]> suggestions = null;
+
+		if (cacheStateHash != null) {
+			cacheKey = getCacheKey(cls);
+			byte[] cached = classCache.get(cacheKey);
+
+			if (cached != null) {
+				byte[] ret = unpackCachedClass(cached);
+				if (ret != null) return ret;
+
+				classCache.rejectHit();
+			}
+
+			suggestions = new ArrayList<>();
+			localNameSuggestions.set(suggestions);
+		}
+
 		ClassReader reader = new ClassReader(cls.data);
-		ClassWriter writer = new ClassWriter(0);
-		int flags = removeFrames ? ClassReader.SKIP_FRAMES : ClassReader.EXPAND_FRAMES;
+		ClassWriter writer;
+		int flags;
+
+		if (computeFrames) {
+			writer = new AsmClassWriter(ClassWriter.COMPUTE_FRAMES, this);
+			flags = ClassReader.SKIP_FRAMES;
+		} else {
+			writer = new ClassWriter(0);
+			flags = removeFrames ? ClassReader.SKIP_FRAMES : ClassReader.EXPAND_FRAMES;
+		}
 
 		ClassVisitor visitor = writer;
 
@@ -627,46 +1984,178 @@ public class TinyRemapper {
 			visitor = new CheckClassAdapter(visitor);
 		}
 
-		reader.accept(new AsmClassRemapper(visitor, remapper, checkPackageAccess, skipLocalMapping, renameInvalidLocals), flags);
-		// TODO: compute frames (-Xverify:all -XX:-FailOverToOldVerifier)
+		visitor = new AsmClassRemapper(visitor, remapper, checkPackageAccess && !fixPackageAccess, skipLocalMapping, renameInvalidLocals); // fixPackageAccess checks upfront
+
+		if (fixPackageAccess) {
+			visitor = createAccessFixer(cls, visitor);
+		}
+
+		byte[] ret;
+
+		try {
+			reader.accept(visitor, flags);
+			ret = writer.toByteArray();
+		} finally {
+			if (suggestions != null) localNameSuggestions.remove();
+		}
+
+		if (cacheKey != null) classCache.put(cacheKey, packCachedClass(ret, suggestions));
 
-		return writer.toByteArray();
+		return ret;
 	}
 
-	private byte[] fixClass(ClassInstance cls, byte[] data) {
-		boolean makeClsPublic = classesToMakePublic.contains(cls);
-		Set<String> clsMembersToMakePublic = null;
+	/**
+	 * Prefix the remapped class with the local name suggestions from the mapping providers it used.
+	 *
+	 * <p>The suggestions can't be part of the cache key since the queried types are only known after remapping, they
+	 * get validated against the mapping providers when reading the entry instead.
+	 */
+	private static byte[] packCachedClass(byte[] data, List<String[]> suggestions) {
+		ByteArrayOutputStream ret = new ByteArrayOutputStream(data.length + 64);
+
+		try (DataOutputStream os = new DataOutputStream(ret)) {
+			os.writeInt(suggestions.size());
+
+			for (String[] suggestion : suggestions) {
+				os.writeUTF(suggestion[0]); // type
+				os.writeBoolean(Boolean.parseBoolean(suggestion[1])); // plural
+				os.writeBoolean(suggestion[2] != null);
+				if (suggestion[2] != null) os.writeUTF(suggestion[2]);
+			}
 
-		for (MemberInstance member : cls.getMembers()) {
-			if (membersToMakePublic.contains(member)) {
-				if (clsMembersToMakePublic == null) clsMembersToMakePublic = new HashSet<>();
+			os.write(data);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 
-				String mappedName, mappedDesc;
+		return ret.toByteArray();
+	}
 
-				if (member.type == MemberType.FIELD) {
-					mappedName = remapper.mapFieldName(cls.getName(), member.name, member.desc);
-					mappedDesc = remapper.mapDesc(member.desc);
-				} else {
-					mappedName = remapper.mapMethodName(cls.getName(), member.name, member.desc);
-					mappedDesc = remapper.mapMethodDesc(member.desc);
-				}
+	/**
+	 * Extract the remapped class from a cache entry if the local name suggestions it relied on are still the same.
+	 *
+	 * @return Remapped class or null if the entry is stale or invalid.
+	 */
+	private byte[] unpackCachedClass(byte[] cached) {
+		ByteArrayInputStream is = new ByteArrayInputStream(cached);
+
+		try (DataInputStream in = new DataInputStream(is)) {
+			for (int i = in.readInt(); i > 0; i--) {
+				String type = in.readUTF();
+				boolean plural = in.readBoolean();
+				String suggestion = in.readBoolean() ? in.readUTF() : null;
+
+				if (!Objects.equals(suggestion, remapper.querySuggestLocalName(type, plural))) return null;
+			}
+
+			return Arrays.copyOfRange(cached, cached.length - is.available(), cached.length);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Hash everything besides the class itself that affects the remapped output.
+	 */
+	private byte[] computeCacheStateHash() {
+		MessageDigest digest = createDigest();
+
+		updateDigest(digest, cacheFormat);
+		updateDigest(digest, String.valueOf(ClassWriter.class.getPackage().getImplementationVersion()));
+		updateDigest(digest, String.format("%b %b %b %b %b %b %b", ignoreFieldDesc, removeFrames, computeFrames, fixPackageAccess,
+				rebuildSourceFilenames, skipLocalMapping, renameInvalidLocals));
+
+		if (computeFrames) { // classes outside of the analyzed ones are loaded from the jdk and remapper class path
+			updateDigest(digest, System.getProperty("java.vendor"));
+			updateDigest(digest, System.getProperty("java.runtime.version"));
+			updateDigest(digest, System.getProperty("java.class.path"));
+		}
 
-				clsMembersToMakePublic.add(MemberInstance.getId(member.type, mappedName, mappedDesc, ignoreFieldDesc));
+		List<String> names = new ArrayList<>(classes.keySet());
+		Collections.sort(names);
+		List<MemberInstance> members = new ArrayList<>();
+
+		for (String name : names) {
+			ClassInstance cls = classes.get(name);
+
+			updateDigest(digest, name);
+			updateDigest(digest, Integer.toString(cls.getAccess()));
+			updateDigest(digest, String.valueOf(cls.getSuperName()));
+			updateDigest(digest, String.join(";", cls.getInterfaces()));
+
+			members.addAll(cls.getMembers());
+			members.sort(Comparator.comparing(MemberInstance::getId));
+
+			for (MemberInstance member : members) {
+				updateDigest(digest, member.getId());
+				updateDigest(digest, Integer.toString(member.access));
+				updateDigest(digest, String.valueOf(member.getNewName()));
+				updateDigest(digest, String.valueOf(member.newNameOriginatingCls));
 			}
+
+			members.clear();
 		}
 
-		if (!makeClsPublic && clsMembersToMakePublic == null) return data;
+		updateDigest(digest, new TreeMap<>(classMap).toString());
 
-		final Set<String> finalClsMembersToMakePublic = clsMembersToMakePublic;
+		for (Map.Entry<String, String[]> entry : new TreeMap<>(localMap).entrySet()) {
+			updateDigest(digest, entry.getKey());
+			updateDigest(digest, Arrays.toString(entry.getValue()));
+		}
 
-		ClassReader reader = new ClassReader(data);
-		ClassWriter writer = new ClassWriter(0);
+		return digest.digest();
+	}
 
-		reader.accept(new ClassVisitor(Opcodes.ASM7, writer) {
+	private byte[] getCacheKey(ClassInstance cls) {
+		MessageDigest digest = createDigest();
+		digest.update(cacheStateHash);
+
+		if (fixPackageAccess) { // depends on how other classes access this one
+			updateDigest(digest, Boolean.toString(classesToMakePublic.contains(cls)));
+
+			for (MemberInstance member : cls.getMembers()) {
+				if (membersToMakePublic.contains(member)) updateDigest(digest, member.getId());
+			}
+		}
+
+		digest.update(cls.data);
+
+		return digest.digest();
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void updateDigest(MessageDigest digest, String str) {
+		digest.update(str.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	private ClassVisitor createAccessFixer(ClassInstance cls, ClassVisitor next) {
+		boolean makeClsPublic = classesToMakePublic.contains(cls);
+		boolean makeMembersPublic = false;
+
+		for (MemberInstance member : cls.getMembers()) {
+			if (membersToMakePublic.contains(member)) {
+				makeMembersPublic = true;
+				break;
+			}
+		}
+
+		if (!makeClsPublic && !makeMembersPublic) return next;
+
+		final boolean finalMakeMembersPublic = makeMembersPublic;
+
+		return new ClassVisitor(Opcodes.ASM7, next) {
 			@Override
 			public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
 				if (makeClsPublic) {
-					access = (access & ~(Opcodes.ACC_PRIVATE | Opcodes.ACC_PROTECTED)) | Opcodes.ACC_PUBLIC;
+					access = makePublic(access);
 				}
 
 				super.visit(version, access, name, signature, superName, interfaces);
@@ -674,9 +2163,9 @@ public class TinyRemapper {
 
 			@Override
 			public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
-				if (finalClsMembersToMakePublic != null
-						&& finalClsMembersToMakePublic.contains(MemberInstance.getFieldId(name, descriptor, ignoreFieldDesc))) {
-					access = (access & ~(Opcodes.ACC_PRIVATE | Opcodes.ACC_PROTECTED)) | Opcodes.ACC_PUBLIC;
+				if (finalMakeMembersPublic
+						&& membersToMakePublic.contains(cls.getMember(MemberType.FIELD, MemberInstance.getFieldId(name, descriptor, ignoreFieldDesc)))) {
+					access = makePublic(access);
 				}
 
 				return super.visitField(access, name, descriptor, signature, value);
@@ -684,16 +2173,25 @@ public class TinyRemapper {
 
 			@Override
 			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
-				if (finalClsMembersToMakePublic != null
-						&& finalClsMembersToMakePublic.contains(MemberInstance.getMethodId(name, descriptor))) {
-					access = (access & ~(Opcodes.ACC_PRIVATE | Opcodes.ACC_PROTECTED)) | Opcodes.ACC_PUBLIC;
+				if (finalMakeMembersPublic
+						&& membersToMakePublic.contains(cls.getMember(MemberType.METHOD, MemberInstance.getMethodId(name, descriptor)))) {
+					access = makePublic(access);
 				}
 
 				return super.visitMethod(access, name, descriptor, signature, exceptions);
 			}
-		}, 0);
+		};
+	}
+
+	private static int makePublic(int access) {
+		return (access & ~(Opcodes.ACC_PRIVATE | Opcodes.ACC_PROTECTED)) | Opcodes.ACC_PUBLIC;
+	}
 
-		return writer.toByteArray();
+	/**
+	 * Get the timings and counters collected so far, updated live.
+	 */
+	public RemapMetrics getMetrics() {
+		return metrics;
 	}
 
 	public AsmRemapper getRemapper() {
@@ -702,16 +2200,50 @@ public class TinyRemapper {
 		return remapper;
 	}
 
+	synchronized ExecutorService getThreadPool() {
+		if (threadPool == null) threadPool = new ForkJoinPool(threadCount);
+
+		return threadPool;
+	}
+
+	/**
+	 * Get the executor for I/O bound tasks, using virtual threads if enabled and supported.
+	 */
+	synchronized ExecutorService getIoExecutor() {
+		if (virtualThreads && !ioExecutorChecked) {
+			ioExecutor = VirtualThreads.newExecutor();
+			ioExecutorChecked = true;
+		}
+
+		return ioExecutor != null ? ioExecutor : getThreadPool();
+	}
+
 	private static void waitForAll(Iterable<Future<?>> futures) {
 		try {
 			for (Future<?> future : futures) {
 				future.get();
 			}
-		} catch (InterruptedException | ExecutionException e) {
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CancellationException) throw (CancellationException) e.getCause();
+			throw new RuntimeException(e);
+		} catch (InterruptedException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	private static void join(CompletableFuture<?> future) {
+		try {
+			future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof CancellationException) throw (CancellationException) e.getCause();
+			throw e;
+		}
+	}
+
+	private void checkCancelled() {
+		if (cancellationToken != null) cancellationToken.check();
+	}
+
 	private static String getClassName(String nameDesc, MemberType type) {
 		int descStart = getDescStart(nameDesc, type);
 		int nameStart = nameDesc.lastIndexOf('/', descStart - 1);
@@ -756,10 +2288,21 @@ public class TinyRemapper {
 
 		@Override
 		public void run() {
+			lastTaskStart.accumulate(System.nanoTime());
+
+			long startCpuTime = RemapMetrics.getCpuTime();
 			Set<ClassInstance> visitedUp = Collections.newSetFromMap(new IdentityHashMap<>());
 			Set<ClassInstance> visitedDown = Collections.newSetFromMap(new IdentityHashMap<>());
+			int done = 0;
 
 			for (Map.Entry<String, String> entry : tasks) {
+				checkCancelled();
+
+				if (progress != null && ++done == progressBatchSize) {
+					progress.update(done);
+					done = 0;
+				}
+
 				String className = getClassName(entry.getKey(), type);
 				ClassInstance cls = classes.get(className);
 				if (cls == null) continue; // not available for this Side
@@ -788,17 +2331,70 @@ public class TinyRemapper {
 				visitedUp.clear();
 				visitedDown.clear();
 			}
+
+			if (progress != null && done > 0) progress.update(done);
+
+			metrics.add(Counter.PROPAGATION_TASKS, tasks.size());
+			metrics.addCpuTime(Phase.PROPAGATE, startCpuTime);
 		}
 
+		private static final int progressBatchSize = 256;
+
 		private final MemberType type;
 		private final List<Map.Entry<String, String> > tasks = new ArrayList<Map.Entry<String,String> >();
+		Progress progress;
+		LongAccumulator lastTaskStart;
+	}
+
+	/**
+	 * Progress state of a propagate or apply operation, shared by its tasks.
+	 */
+	private final class Progress {
+		Progress(Phase phase, long total) {
+			this.phase = phase;
+			this.total = total;
+		}
+
+		void update(long count) {
+			long done = this.done.addAndGet(count);
+			if (!throttle.tryUpdate(done == total)) return;
+
+			if (phase == Phase.PROPAGATE) {
+				progressListener.onPropagate(done, total);
+			} else {
+				progressListener.onWrite(done, total);
+			}
+		}
+
+		private final Phase phase;
+		private final long total;
+		private final AtomicLong done = new AtomicLong();
+		private final ProgressThrottle throttle = new ProgressThrottle(progressInterval);
+	}
+
+	private static final String cacheFormat = "tiny-remapper class cache 2";
+
+	private static final long minSplitSize = 1 << 20;
+	private static final long minChunkSize = 256 << 10;
+	// estimated by the class file size, classes from a snapshot don't retain their data
+	private static long getApplyCost(ClassInstance cls) {
+		return cls.data != null ? cls.data.length : cls.getMembers().size() * 100L;
 	}
 
+	private static final Comparator<ClassInstance> applyCostComparator = Comparator.comparingLong(TinyRemapper::getApplyCost).reversed();
+
+	private static final int constantUtf8 = 1;
+	private static final int constantClass = 7;
+	private static final int constantFieldRef = 9;
+	private static final int constantMethodRef = 10;
+	private static final int constantInterfaceMethodRef = 11;
+
 	private final boolean check = false;
 
 	final Set<String> forcePropagation;
 	final boolean propagatePrivate;
 	private final boolean removeFrames;
+	private final boolean computeFrames;
 	private final boolean ignoreConflicts;
 	private final boolean resolveMissing;
 	private final boolean checkPackageAccess;
@@ -806,21 +2402,43 @@ public class TinyRemapper {
 	private final boolean rebuildSourceFilenames;
 	private final boolean skipLocalMapping;
 	private final boolean renameInvalidLocals;
+	private final long outputBufferLimit;
+	private final ClassCache classCache;
+	private final IProgressListener progressListener;
+	private final long progressInterval;
+	private final CancellationToken cancellationToken;
 	private final ClassVisitor extraAnalyzeVisitor;
 	final Remapper extraRemapper;
 	final Map<String, String> classMap = new HashMap<>();
 	final Map<String, String> methodMap = new HashMap<>();
 	final Map<String, String[]> localMap = new HashMap<>();
 	final Map<String, String> fieldMap = new HashMap<>();
-	final Map<String, ClassInstance> classes = new HashMap<>();
+	final Map<String, ClassInstance> classes = new ConcurrentHashMap<>();
+	private final List<ClassPathSnapshot> classPathSnapshots = new ArrayList<>();
+	private final Map<String, ClassInstance> mappedClasses = new HashMap<>();
+	final Map<String, String> commonSuperClasses = new ConcurrentHashMap<>();
 	final Map<MemberInstance, Set<String>> conflicts = new ConcurrentHashMap<>();
 	final Set<ClassInstance> classesToMakePublic = Collections.newSetFromMap(new ConcurrentHashMap<>());
 	final Set<MemberInstance> membersToMakePublic = Collections.newSetFromMap(new ConcurrentHashMap<>());
+	final Queue<String> invalidAccesses = new ConcurrentLinkedQueue<>();
+	private final Queue<String> duplicateClasses = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger readOperations = new AtomicInteger();
 	final Collection<IMappingProvider> mappingProviders;
 	final boolean ignoreFieldDesc;
 	private final int threadCount;
-	private final ExecutorService threadPool;
-	private final AsmRemapper remapper = new AsmRemapper(this);
-
+	private ExecutorService threadPool;
+	private final boolean ownsThreadPool;
+	private final boolean virtualThreads;
+	private ExecutorService ioExecutor;
+	private boolean ioExecutorChecked;
+	final AsmRemapper remapper = new AsmRemapper(this);
+	final RemapMetrics metrics = new RemapMetrics();
+
+	private volatile boolean mappingsLoaded;
+	private byte[] cacheStateHash;
+	/**
+	 * Local name suggestions queried while remapping a class for the cache, see {@link #packCachedClass}.
+	 */
+	final ThreadLocal<List<String[]>> localNameSuggestions = new ThreadLocal<>();
 	private boolean dirty = true;
 }
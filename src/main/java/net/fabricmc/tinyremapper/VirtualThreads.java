@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Virtual thread support, which is unavailable on Java 8.
+ *
+ * <p>The jar contains a Java 21 version of this class in META-INF/versions/21, see src/main/java21.
+ */
+final class VirtualThreads {
+	/**
+	 * Create an executor starting a new virtual thread for each task.
+	 *
+	 * @return The executor or null if the running Java version doesn't support virtual threads.
+	 */
+	static ExecutorService newExecutor() {
+		return null;
+	}
+}
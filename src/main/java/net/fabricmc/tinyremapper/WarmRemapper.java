@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Remapper instance processing one input after another, keeping its mappings, class path and propagation results.
+ *
+ * <p>Each input replaces the previous one's classes through {@link TinyRemapper#updateInputs}, so only the current
+ * input and the class path are visible while remapping it.
+ */
+final class WarmRemapper {
+	WarmRemapper(TinyRemapper remapper) {
+		this.remapper = remapper;
+	}
+
+	/**
+	 * Remap all classes and copy the non-class files of an input jar or directory.
+	 *
+	 * @return Number of remapped classes.
+	 */
+	int remap(Path input, OutputConsumerPath outputConsumer, NonClassCopyMode ncCopyMode) throws IOException {
+		List<byte[]> classes = readClasses(input);
+
+		// remove all of the previous input's classes by the names the analysis registered them under, file names may
+		// differ, e.g. for META-INF/versions entries, classes present again replace their removal
+		Set<String> added = new HashSet<>();
+		remapper.updateInputs(classes, inputs, added);
+		inputs = added;
+
+		outputConsumer.addNonClassFiles(input, ncCopyMode, remapper);
+		remapper.apply(outputConsumer);
+
+		return added.size();
+	}
+
+	/**
+	 * Read the class files of an input in their archive or directory order, later duplicates replace earlier ones.
+	 */
+	private static List<byte[]> readClasses(Path input) throws IOException {
+		List<byte[]> ret = new ArrayList<>();
+
+		if (Files.isDirectory(input)) {
+			try (Stream<Path> files = Files.walk(input)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					if (file.toString().endsWith(".class")) {
+						ret.add(Files.readAllBytes(file));
+					}
+				}
+			}
+		} else {
+			try (ZipReader reader = new ZipReader(input)) {
+				for (ZipReader.Entry entry : reader.getEntries()) {
+					if (entry.name.endsWith(".class")) {
+						ret.add(reader.read(entry));
+					}
+				}
+			}
+		}
+
+		return ret;
+	}
+
+	final TinyRemapper remapper;
+	private Set<String> inputs = new HashSet<>();
+	long lastUsed;
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Zip file reader providing access to the raw compressed entry data.
+ *
+ * <p>This complements {@link ZipWriter#copyRaw} to copy entries between archives without inflating and deflating them.
+ */
+final class ZipReader implements Closeable {
+	public ZipReader(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+
+		try {
+			this.entries = Collections.unmodifiableList(readCentralDirectory());
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Read and decompress an entry's content.
+	 */
+	public byte[] read(Entry entry) throws IOException {
+		if (entry.size > Integer.MAX_VALUE - 8 || entry.compressedSize > Integer.MAX_VALUE - 8) throw new IOException("entry "+entry.name+" is too large");
+
+		ByteBuffer data = ByteBuffer.allocate((int) entry.compressedSize);
+		readFully(data, getDataOffset(entry));
+
+		if (entry.method == ZipWriter.methodStored) {
+			return data.array();
+		} else if (entry.method != ZipWriter.methodDeflated) {
+			throw new ZipException("unsupported compression method "+entry.method+" for "+entry.name);
+		}
+
+		Inflater inflater = new Inflater(true);
+
+		try {
+			byte[] ret = new byte[(int) entry.size];
+			inflater.setInput(data.array());
+			int size = 0;
+
+			while (size < ret.length && !inflater.finished()) {
+				int len = inflater.inflate(ret, size, ret.length - size);
+				if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) throw new ZipException("truncated entry "+entry.name);
+				size += len;
+			}
+
+			if (size != ret.length) throw new ZipException("size mismatch for "+entry.name);
+
+			return ret;
+		} catch (DataFormatException e) {
+			throw new ZipException("invalid data in "+entry.name+": "+e.getMessage());
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Read an entry's data in its original compressed form.
+	 */
+	public ByteBuffer readRaw(Entry entry) throws IOException {
+		if (entry.compressedSize > Integer.MAX_VALUE - 8) throw new IOException("entry "+entry.name+" is too large");
+
+		ByteBuffer ret = ByteBuffer.allocate((int) entry.compressedSize);
+		readFully(ret, getDataOffset(entry));
+		ret.flip();
+
+		return ret;
+	}
+
+	/**
+	 * Transfer an entry's compressed data to a specific position in another channel.
+	 */
+	public synchronized void transferData(Entry entry, FileChannel target, long targetPosition) throws IOException {
+		long offset = getDataOffset(entry);
+		long remaining = entry.compressedSize;
+
+		channel.position(offset);
+
+		while (remaining > 0) {
+			long len = target.transferFrom(channel, targetPosition, remaining);
+			if (len <= 0) throw new EOFException("truncated entry "+entry.name);
+
+			targetPosition += len;
+			remaining -= len;
+		}
+	}
+
+	private long getDataOffset(Entry entry) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(header, entry.localHeaderOffset);
+		if (header.getInt(0) != 0x04034b50) throw new ZipException("invalid local header for "+entry.name);
+
+		return entry.localHeaderOffset + 30 + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+	}
+
+	private List<Entry> readCentralDirectory() throws IOException {
+		// find the end of central directory record, it is followed by a comment of up to 65535 bytes
+
+		long size = channel.size();
+		int tailSize = (int) Math.min(size, 22 + 0xffff);
+		ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(tail, size - tailSize);
+
+		int endPos = -1;
+
+		for (int pos = tailSize - 22; pos >= 0; pos--) {
+			if (tail.getInt(pos) == 0x06054b50) {
+				endPos = pos;
+				break;
+			}
+		}
+
+		if (endPos < 0) throw new ZipException("no end of central directory record");
+
+		long entryCount = tail.getShort(endPos + 10) & 0xffff;
+		long cdSize = tail.getInt(endPos + 12) & 0xffffffffL;
+		long cdOffset = tail.getInt(endPos + 16) & 0xffffffffL;
+
+		if (entryCount == 0xffff || cdSize == 0xffffffffL || cdOffset == 0xffffffffL) { // zip64
+			long locatorPos = size - tailSize + endPos - 20;
+			ByteBuffer locator = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+
+			if (locatorPos >= 0) {
+				readFully(locator, locatorPos);
+			}
+
+			if (locatorPos >= 0 && locator.getInt(0) == 0x07064b50) {
+				ByteBuffer end = ByteBuffer.allocate(56).order(ByteOrder.LITTLE_ENDIAN);
+				readFully(end, locator.getLong(8));
+				if (end.getInt(0) != 0x06064b50) throw new ZipException("invalid zip64 end of central directory record");
+
+				entryCount = end.getLong(32);
+				cdSize = end.getLong(40);
+				cdOffset = end.getLong(48);
+			}
+		}
+
+		if (cdSize > Integer.MAX_VALUE) throw new ZipException("central directory too large");
+
+		ByteBuffer cd = ByteBuffer.allocate((int) cdSize).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(cd, cdOffset);
+		cd.flip();
+
+		List<Entry> ret = new ArrayList<>((int) Math.min(entryCount, 0x10000));
+
+		while (cd.remaining() >= 46) {
+			if (cd.getInt() != 0x02014b50) throw new ZipException("invalid central directory entry");
+
+			cd.position(cd.position() + 6); // version made by, version needed, flags
+			int method = cd.getShort() & 0xffff;
+			cd.position(cd.position() + 4); // time, date
+			int crc = cd.getInt();
+			long compressedSize = cd.getInt() & 0xffffffffL;
+			long uncompressedSize = cd.getInt() & 0xffffffffL;
+			int nameLen = cd.getShort() & 0xffff;
+			int extraLen = cd.getShort() & 0xffff;
+			int commentLen = cd.getShort() & 0xffff;
+			cd.position(cd.position() + 8); // disk, internal attributes, external attributes
+			long offset = cd.getInt() & 0xffffffffL;
+
+			byte[] nameBytes = new byte[nameLen];
+			cd.get(nameBytes);
+			String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+			int extraEnd = cd.position() + extraLen;
+
+			while (cd.position() + 4 <= extraEnd) {
+				int id = cd.getShort() & 0xffff;
+				int len = cd.getShort() & 0xffff;
+				int next = cd.position() + len;
+
+				if (id == 1) { // zip64, only contains the fields that overflowed
+					if (uncompressedSize == 0xffffffffL && cd.position() + 8 <= next) uncompressedSize = cd.getLong();
+					if (compressedSize == 0xffffffffL && cd.position() + 8 <= next) compressedSize = cd.getLong();
+					if (offset == 0xffffffffL && cd.position() + 8 <= next) offset = cd.getLong();
+				}
+
+				cd.position(next);
+			}
+
+			cd.position(extraEnd + commentLen);
+			ret.add(new Entry(name, method, crc, compressedSize, uncompressedSize, offset));
+		}
+
+		return ret;
+	}
+
+	private void readFully(ByteBuffer buffer, long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			int len = channel.read(buffer, offset);
+			if (len < 0) throw new EOFException();
+
+			offset += len;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	public static final class Entry {
+		Entry(String name, int method, int crc, long compressedSize, long size, long localHeaderOffset) {
+			this.name = name;
+			this.method = method;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		public boolean isDirectory() {
+			return name.endsWith("/");
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+
+		final String name;
+		final int method;
+		final int crc;
+		final long compressedSize;
+		final long size;
+		final long localHeaderOffset;
+	}
+
+	private final FileChannel channel;
+	private final List<Entry> entries;
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Zip file writer appending entries to a single channel as they arrive.
+ *
+ * <p>The entries are compressed on the calling thread, only allocating the file region for the finished entry is
+ * synchronized. The entry is written to its region afterwards, concurrently with other writes.
+ * The central directory gets written by {@link #close()}, which waits for writes still filling their region and rejects
+ * any later ones. Writing an entry with an existing name replaces the previous one, the data it occupied stays in the
+ * file without being referenced.
+ *
+ * <p>In deterministic mode the compressed entries are kept in memory instead and written sorted by name with a fixed
+ * timestamp on close, making the output independent of the write order. Compression still happens on the calling
+ * threads.
+ */
+final class ZipWriter implements Closeable {
+	public ZipWriter(Path file) throws IOException {
+		this(file, false);
+	}
+
+	public ZipWriter(Path file, boolean deterministic) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		this.deterministic = deterministic;
+
+		if (deterministic) {
+			this.entries = new TreeMap<>();
+			this.dosTime = 0;
+			this.dosDate = fixedDosDate;
+		} else {
+			this.entries = new LinkedHashMap<>();
+
+			Calendar cal = Calendar.getInstance();
+			this.dosTime = cal.get(Calendar.HOUR_OF_DAY) << 11 | cal.get(Calendar.MINUTE) << 5 | cal.get(Calendar.SECOND) >> 1;
+			this.dosDate = Math.max(cal.get(Calendar.YEAR) - 1980, 0) << 9 | (cal.get(Calendar.MONTH) + 1) << 5 | cal.get(Calendar.DAY_OF_MONTH);
+		}
+	}
+
+	/**
+	 * Compress and write a file entry, creating entries for its parent directories as needed.
+	 *
+	 * @param name Entry name with '/' as separator and without leading '/'.
+	 * @param data Uncompressed file content.
+	 */
+	public void write(String name, byte[] data) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+
+		Deflater deflater = acquireDeflater();
+		byte[] compressed = new byte[data.length];
+		int compressedSize = 0;
+		boolean finished;
+
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+
+			while (!deflater.finished() && compressedSize < compressed.length) {
+				compressedSize += deflater.deflate(compressed, compressedSize, compressed.length - compressedSize);
+			}
+
+			finished = deflater.finished();
+		} finally {
+			releaseDeflater(deflater);
+		}
+
+		if (finished) {
+			if (deterministic) compressed = Arrays.copyOf(compressed, compressedSize); // retained until close
+
+			writeEntry(name, methodDeflated, (int) crc.getValue(), data.length, ByteBuffer.wrap(compressed, 0, compressedSize));
+		} else { // incompressible
+			writeEntry(name, methodStored, (int) crc.getValue(), data.length, ByteBuffer.wrap(data));
+		}
+	}
+
+	/**
+	 * Take a deflater from the pool or create a new one if the pool is empty.
+	 */
+	private Deflater acquireDeflater() {
+		Deflater ret = deflaters.poll();
+
+		if (ret == null) {
+			return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		} else {
+			pooledDeflaters.decrementAndGet();
+			return ret;
+		}
+	}
+
+	/**
+	 * Return a deflater to the pool, freeing its native memory right away if the pool is full or already closed.
+	 *
+	 * <p>The pool isn't tied to threads since the writers may run on short lived virtual threads.
+	 */
+	private void releaseDeflater(Deflater deflater) {
+		if (!closed && pooledDeflaters.incrementAndGet() <= maxPooledDeflaters) {
+			deflater.reset();
+			deflaters.offer(deflater);
+
+			if (closed) endPooledDeflaters(); // raced with close
+		} else {
+			pooledDeflaters.decrementAndGet();
+			deflater.end();
+		}
+	}
+
+	private void endPooledDeflaters() {
+		Deflater deflater;
+
+		while ((deflater = deflaters.poll()) != null) {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Copy an entry from another zip file without recompressing it.
+	 *
+	 * @param name Entry name with '/' as separator and without leading '/'.
+	 * @param src Zip file containing the entry.
+	 * @param entry Entry to copy, with the data in its original compressed form.
+	 */
+	public void copyRaw(String name, ZipReader src, ZipReader.Entry entry) throws IOException {
+		if (entry.compressedSize >= 0xffffffffL || entry.size >= 0xffffffffL) throw new IOException("entry "+entry.name+" is too large");
+
+		if (deterministic) {
+			writeEntry(name, entry.method, entry.crc, (int) entry.size, src.readRaw(entry));
+			return;
+		}
+
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer header = createLocalHeader(nameBytes, entry.method, entry.crc, (int) entry.compressedSize, (int) entry.size);
+		long offset = reserve(name, nameBytes, entry.method, entry.crc, (int) entry.compressedSize, (int) entry.size, header.remaining() + entry.compressedSize);
+
+		try {
+			writeFully(offset, header); // extends the file to the data offset, which transferData requires
+			src.transferData(entry, channel, offset + header.limit());
+		} finally {
+			writeDone();
+		}
+	}
+
+	private void writeEntry(String name, int method, int crc, int size, ByteBuffer data) throws IOException {
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		int compressedSize = data.remaining();
+
+		if (deterministic) {
+			defer(name, new Entry(nameBytes, method, crc, compressedSize, size, -1, false, data));
+			return;
+		}
+
+		ByteBuffer header = createLocalHeader(nameBytes, method, crc, compressedSize, size);
+		long offset = reserve(name, nameBytes, method, crc, compressedSize, size, header.remaining() + compressedSize);
+
+		try {
+			writeFully(offset, header, data);
+		} finally {
+			writeDone();
+		}
+	}
+
+	/**
+	 * Record an entry and allocate the file region for its local header and data.
+	 *
+	 * <p>This is the only synchronized part of adding an entry, the region can be filled concurrently afterwards. The
+	 * caller has to invoke {@link #writeDone()} once it filled the region, {@link #close()} waits for that.
+	 *
+	 * @return Offset of the allocated region.
+	 */
+	private synchronized long reserve(String name, byte[] nameBytes, int method, int crc, int compressedSize, int size, long length) throws IOException {
+		if (closed) throw new IllegalStateException("zip writer already closed");
+
+		int sep = name.lastIndexOf('/', name.length() - 2);
+		if (sep > 0) addDirectory(name.substring(0, sep + 1));
+
+		long offset = position;
+		position += length;
+		entries.put(name, new Entry(nameBytes, method, crc, compressedSize, size, offset, false, null));
+		pendingWrites++;
+
+		return offset;
+	}
+
+	private synchronized void writeDone() {
+		if (--pendingWrites == 0 && closed) notifyAll();
+	}
+
+	/**
+	 * Record an entry including its data to be written on close, used in deterministic mode.
+	 */
+	private synchronized void defer(String name, Entry entry) throws IOException {
+		if (closed) throw new IllegalStateException("zip writer already closed");
+
+		int sep = name.lastIndexOf('/', name.length() - 2);
+		if (sep > 0) addDirectory(name.substring(0, sep + 1));
+
+		entries.put(name, entry);
+	}
+
+	private void addDirectory(String name) throws IOException {
+		assert Thread.holdsLock(this);
+
+		if (entries.containsKey(name)) return;
+
+		int sep = name.lastIndexOf('/', name.length() - 2);
+		if (sep > 0) addDirectory(name.substring(0, sep + 1));
+
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+		if (deterministic) {
+			entries.put(name, new Entry(nameBytes, methodStored, 0, 0, 0, -1, true, ByteBuffer.allocate(0)));
+			return;
+		}
+
+		ByteBuffer header = createLocalHeader(nameBytes, methodStored, 0, 0, 0);
+		long offset = position;
+		position += header.remaining();
+		writeFully(offset, header);
+		entries.put(name, new Entry(nameBytes, methodStored, 0, 0, 0, offset, true, null));
+	}
+
+	private ByteBuffer createLocalHeader(byte[] name, int method, int crc, int compressedSize, int size) {
+		ByteBuffer ret = ByteBuffer.allocate(30 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+		ret.putInt(0x04034b50); // signature
+		ret.putShort((short) 20); // version needed
+		ret.putShort((short) flagUtf8);
+		ret.putShort((short) method);
+		ret.putShort((short) dosTime);
+		ret.putShort((short) dosDate);
+		ret.putInt(crc);
+		ret.putInt(compressedSize);
+		ret.putInt(size);
+		ret.putShort((short) name.length);
+		ret.putShort((short) 0); // extra length
+		ret.put(name);
+		ret.flip();
+
+		return ret;
+	}
+
+	private void writeFully(long offset, ByteBuffer... buffers) throws IOException {
+		for (ByteBuffer buffer : buffers) {
+			while (buffer.hasRemaining()) {
+				offset += channel.write(buffer, offset);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) return;
+
+		closed = true; // rejects further writes
+
+		try {
+			while (pendingWrites > 0) { // entries reserved before closing still write to the channel
+				wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			channel.close();
+			endPooledDeflaters();
+			throw new InterruptedIOException("interrupted while waiting for pending zip writes");
+		}
+
+		try {
+			if (deterministic) writeDeferredEntries();
+			writeCentralDirectory();
+		} finally {
+			channel.close();
+			endPooledDeflaters();
+		}
+	}
+
+	private void writeDeferredEntries() throws IOException {
+		for (Entry entry : entries.values()) {
+			ByteBuffer header = createLocalHeader(entry.name, entry.method, entry.crc, entry.compressedSize, entry.size);
+			entry.offset = position;
+			position += header.remaining() + entry.data.remaining();
+			writeFully(entry.offset, header, entry.data);
+			entry.data = null;
+		}
+	}
+
+	private void writeCentralDirectory() throws IOException {
+		List<ByteBuffer> buffers = new ArrayList<>(entries.size());
+		long cdOffset = position;
+		long cdSize = 0;
+
+		for (Entry entry : entries.values()) {
+			boolean zip64 = entry.offset >= 0xffffffffL;
+			ByteBuffer buffer = ByteBuffer.allocate(46 + entry.name.length + (zip64 ? 12 : 0)).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(0x02014b50); // signature
+			buffer.putShort((short) (zip64 ? 45 : 20)); // version made by
+			buffer.putShort((short) (zip64 ? 45 : 20)); // version needed
+			buffer.putShort((short) flagUtf8);
+			buffer.putShort((short) entry.method);
+			buffer.putShort((short) dosTime);
+			buffer.putShort((short) dosDate);
+			buffer.putInt(entry.crc);
+			buffer.putInt(entry.compressedSize);
+			buffer.putInt(entry.size);
+			buffer.putShort((short) entry.name.length);
+			buffer.putShort((short) (zip64 ? 12 : 0)); // extra length
+			buffer.putShort((short) 0); // comment length
+			buffer.putShort((short) 0); // disk number
+			buffer.putShort((short) 0); // internal attributes
+			buffer.putInt(entry.isDirectory ? 0x10 : 0); // external attributes
+			buffer.putInt(zip64 ? 0xffffffff : (int) entry.offset);
+			buffer.put(entry.name);
+
+			if (zip64) {
+				buffer.putShort((short) 1); // zip64 extra field id
+				buffer.putShort((short) 8);
+				buffer.putLong(entry.offset);
+			}
+
+			buffer.flip();
+			cdSize += buffer.remaining();
+			buffers.add(buffer);
+		}
+
+		boolean zip64 = entries.size() >= 0xffff || cdOffset >= 0xffffffffL || cdSize >= 0xffffffffL;
+		ByteBuffer end = ByteBuffer.allocate(22 + (zip64 ? 56 + 20 : 0)).order(ByteOrder.LITTLE_ENDIAN);
+
+		if (zip64) {
+			long zip64EndOffset = cdOffset + cdSize;
+
+			end.putInt(0x06064b50); // zip64 end of central directory signature
+			end.putLong(44); // remaining record size
+			end.putShort((short) 45); // version made by
+			end.putShort((short) 45); // version needed
+			end.putInt(0); // disk number
+			end.putInt(0); // disk with central directory
+			end.putLong(entries.size()); // entries on this disk
+			end.putLong(entries.size()); // total entries
+			end.putLong(cdSize);
+			end.putLong(cdOffset);
+
+			end.putInt(0x07064b50); // zip64 end of central directory locator signature
+			end.putInt(0); // disk with zip64 end of central directory
+			end.putLong(zip64EndOffset);
+			end.putInt(1); // total disks
+		}
+
+		end.putInt(0x06054b50); // end of central directory signature
+		end.putShort((short) 0); // disk number
+		end.putShort((short) 0); // disk with central directory
+		end.putShort((short) (zip64 ? 0xffff : entries.size())); // entries on this disk
+		end.putShort((short) (zip64 ? 0xffff : entries.size())); // total entries
+		end.putInt(zip64 ? 0xffffffff : (int) cdSize);
+		end.putInt(zip64 ? 0xffffffff : (int) cdOffset);
+		end.putShort((short) 0); // comment length
+		end.flip();
+		buffers.add(end);
+
+		writeFully(cdOffset, buffers.toArray(new ByteBuffer[0]));
+	}
+
+	private static final class Entry {
+		Entry(byte[] name, int method, int crc, int compressedSize, int size, long offset, boolean isDirectory, ByteBuffer data) {
+			this.name = name;
+			this.method = method;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.offset = offset;
+			this.isDirectory = isDirectory;
+			this.data = data;
+		}
+
+		final byte[] name;
+		final int method;
+		final int crc;
+		final int compressedSize;
+		final int size;
+		long offset; // assigned on close in deterministic mode
+		final boolean isDirectory;
+		ByteBuffer data; // compressed data pending in deterministic mode
+	}
+
+	static final int methodStored = 0;
+	static final int methodDeflated = 8;
+	private static final int flagUtf8 = 1 << 11;
+	private static final int fixedDosDate = 1 << 5 | 1; // 1980-01-01
+
+	private static final int maxPooledDeflaters = Runtime.getRuntime().availableProcessors();
+
+	private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pooledDeflaters = new AtomicInteger();
+	private final FileChannel channel;
+	private final boolean deterministic;
+	private final int dosTime;
+	private final int dosDate;
+	private final Map<String, Entry> entries;
+	private long position;
+	private int pendingWrites;
+	private volatile boolean closed;
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.nio.file.Path;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import net.fabricmc.tinyremapper.RemapMetrics.Phase;
+
+/**
+ * Java Flight Recorder events, replacing the no-op Java 8 version in multi-release jars.
+ *
+ * <p>The events are configured through the regular JFR settings, e.g. a .jfc file passed with
+ * -XX:StartFlightRecording:settings=&lt;file&gt; adjusting the net.fabricmc.tinyremapper.ApplyClass threshold or
+ * enabling net.fabricmc.tinyremapper.ResolveCacheMiss. Disabled events only cost the allocation of the event object,
+ * which usually gets eliminated by escape analysis.
+ */
+final class FlightRecorderEvents {
+	static Object beginPhase() {
+		PhaseEvent ret = new PhaseEvent();
+		ret.begin();
+
+		return ret;
+	}
+
+	static void endPhase(Object event, Phase phase) {
+		PhaseEvent e = (PhaseEvent) event;
+		e.end();
+
+		if (e.shouldCommit()) {
+			e.phase = phase.name();
+			e.commit();
+		}
+	}
+
+	static Object beginRead() {
+		ReadEvent ret = new ReadEvent();
+		ret.begin();
+
+		return ret;
+	}
+
+	static void endRead(Object event, Path file, boolean isInput, int classCount) {
+		ReadEvent e = (ReadEvent) event;
+		e.end();
+
+		if (e.shouldCommit()) {
+			e.file = file.toString();
+			e.isInput = isInput;
+			e.classCount = classCount;
+			e.commit();
+		}
+	}
+
+	static Object beginApply() {
+		ApplyEvent ret = new ApplyEvent();
+		ret.begin();
+
+		return ret;
+	}
+
+	static void endApply(Object event, String className, int size) {
+		ApplyEvent e = (ApplyEvent) event;
+		e.end();
+
+		if (e.shouldCommit()) {
+			e.className = className;
+			e.size = size;
+			e.commit();
+		}
+	}
+
+	static Object beginResolve() {
+		ResolveEvent ret = new ResolveEvent();
+		ret.begin();
+
+		return ret;
+	}
+
+	static void endResolve(Object event, String className, String memberId) {
+		ResolveEvent e = (ResolveEvent) event;
+		e.end();
+
+		if (e.shouldCommit()) {
+			e.className = className;
+			e.memberId = memberId;
+			e.commit();
+		}
+	}
+
+	@Name("net.fabricmc.tinyremapper.Phase")
+	@Label("Remapping Phase")
+	@Category("Tiny Remapper")
+	@StackTrace(false)
+	static final class PhaseEvent extends Event {
+		@Label("Phase")
+		String phase;
+	}
+
+	@Name("net.fabricmc.tinyremapper.Read")
+	@Label("Read Input")
+	@Description("Reading and analyzing the classes of a jar, directory or class file")
+	@Category("Tiny Remapper")
+	@StackTrace(false)
+	static final class ReadEvent extends Event {
+		@Label("File")
+		String file;
+
+		@Label("Input")
+		@Description("Whether the file is an input or on the class path")
+		boolean isInput;
+
+		@Label("Class Count")
+		int classCount;
+	}
+
+	@Name("net.fabricmc.tinyremapper.ApplyClass")
+	@Label("Apply Class")
+	@Description("Remapping a single class, only recorded above the threshold")
+	@Category("Tiny Remapper")
+	@Threshold("10 ms")
+	@StackTrace(false)
+	static final class ApplyEvent extends Event {
+		@Label("Class Name")
+		String className;
+
+		@Label("Size")
+		@DataAmount
+		int size;
+	}
+
+	@Name("net.fabricmc.tinyremapper.ResolveCacheMiss")
+	@Label("Resolve Cache Miss")
+	@Description("Member resolution through the class hierarchy, not answered by the resolution cache")
+	@Category("Tiny Remapper")
+	@Enabled(false)
+	@StackTrace(false)
+	static final class ResolveEvent extends Event {
+		@Label("Class Name")
+		String className;
+
+		@Label("Member")
+		String memberId;
+	}
+}
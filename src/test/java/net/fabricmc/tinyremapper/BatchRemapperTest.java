@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Batches of jobs sharing mappings, with failures reported per job.
+ */
+public class BatchRemapperTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void conflictFailsOnlyItsJob() throws IOException {
+		Path dir = tmp.getRoot().toPath();
+		// conf/Sub.m overrides conf/Base.m, but the mappings give them different names
+		Path conflicting = writeJar(dir.resolve("conflicting.jar"), createClass("conf/Base", "java/lang/Object"), createClass("conf/Sub", "conf/Base"));
+		Path valid = writeJar(dir.resolve("valid.jar"), createClass("ok/Base", "java/lang/Object"));
+
+		BatchRemapper batch = new BatchRemapper.Builder(() -> TinyRemapper.newRemapper()
+				.withMappings((classMap, fieldMap, methodMap) -> {
+					methodMap.put("conf/Base/m()V", "first");
+					methodMap.put("conf/Sub/m()V", "second");
+					classMap.put("ok/Base", "ok/Renamed");
+				})
+				.threads(1)
+				.build())
+				.parallelism(1) // the valid job runs after the failed one on the same worker
+				.build();
+
+		List<BatchRemapper.Result> results = batch.run(Arrays.asList(
+				new BatchRemapper.Job(conflicting, dir.resolve("conflicting-out.jar")),
+				new BatchRemapper.Job(valid, dir.resolve("valid-out.jar"))));
+
+		assertTrue(results.get(0).getError() instanceof MappingConflictException);
+		assertNull(results.get(1).getError());
+		assertEquals(1, results.get(1).getClassCount());
+
+		try (ZipFile zip = new ZipFile(dir.resolve("valid-out.jar").toFile())) {
+			assertNotNull(zip.getEntry("ok/Renamed.class"));
+		}
+	}
+
+	@Test
+	public void isolateInputs() throws IOException {
+		Path dir = tmp.getRoot().toPath();
+		// entry names not matching the class names, the classes must still be gone for the next job
+		Path first = dir.resolve("first.jar");
+
+		try (ZipOutputStream os = new ZipOutputStream(Files.newOutputStream(first))) {
+			os.putNextEntry(new ZipEntry("misplaced/A.class"));
+			os.write(createClass("first/A", "java/lang/Object"));
+			os.putNextEntry(new ZipEntry("META-INF/versions/9/first/B.class"));
+			os.write(createClass("first/B", "java/lang/Object"));
+		}
+
+		Path second = writeJar(dir.resolve("second.jar"), createClass("second/A", "java/lang/Object"));
+
+		BatchRemapper batch = new BatchRemapper.Builder(() -> TinyRemapper.newRemapper().threads(1).build())
+				.parallelism(1) // both jobs share one remapper
+				.build();
+
+		List<BatchRemapper.Result> results = batch.run(Arrays.asList(
+				new BatchRemapper.Job(first, dir.resolve("first-out.jar")),
+				new BatchRemapper.Job(second, dir.resolve("second-out.jar"))));
+
+		assertNull(results.get(0).getError());
+		assertEquals(2, results.get(0).getClassCount());
+		assertNull(results.get(1).getError());
+		assertEquals(1, results.get(1).getClassCount());
+
+		try (ZipFile zip = new ZipFile(dir.resolve("second-out.jar").toFile())) {
+			List<String> classes = new ArrayList<>();
+
+			for (ZipEntry entry : Collections.list(zip.entries())) {
+				if (entry.getName().endsWith(".class")) classes.add(entry.getName());
+			}
+
+			assertEquals(Collections.singletonList("second/A.class"), classes);
+		}
+	}
+
+	private static Path writeJar(Path file, byte[]... classes) throws IOException {
+		try (ZipOutputStream os = new ZipOutputStream(Files.newOutputStream(file))) {
+			for (byte[] data : classes) {
+				os.putNextEntry(new ZipEntry(new ClassReader(data).getClassName()+".class"));
+				os.write(data);
+			}
+		}
+
+		return file;
+	}
+
+	private static byte[] createClass(String name, String superName) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "m", "()V", null, null);
+		mv.visitCode();
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		cw.visitEnd();
+
+		return cw.toByteArray();
+	}
+}
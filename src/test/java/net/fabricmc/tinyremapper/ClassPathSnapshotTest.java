@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Remapping against a {@link ClassPathSnapshot} compared to reading the same class path directly.
+ */
+public class ClassPathSnapshotTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	/**
+	 * The mapping for snap/Base.m reaches the input only by going down to snap/Sub and up again to snap/Iface, with
+	 * snap/Sub not referenced by anything else.
+	 */
+	@Test
+	public void propagateThroughSubType() throws IOException {
+		Path classPath = tmp.newFolder("cp").toPath();
+		write(classPath, createClass("snap/Iface", Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, "java/lang/Object", null));
+		write(classPath, createClass("snap/Base", Opcodes.ACC_PUBLIC, "java/lang/Object", null));
+		write(classPath, createClass("snap/Sub", Opcodes.ACC_PUBLIC, "snap/Base", "snap/Iface"));
+
+		byte[] input = createClass("in/Impl", Opcodes.ACC_PUBLIC, "java/lang/Object", "snap/Iface");
+
+		assertEquals("n", remapMethodName(input, remapper -> remapper.readClassPath(classPath)));
+		assertEquals("n", remapMethodName(input, remapper -> remapper.attachClassPath(ClassPathSnapshot.create(classPath))));
+	}
+
+	private static String remapMethodName(byte[] input, ClassPathSetup setup) throws IOException {
+		TinyRemapper remapper = TinyRemapper.newRemapper()
+				.withMappings((classMap, fieldMap, methodMap) -> methodMap.put("snap/Base/m()V", "n"))
+				.threads(1)
+				.build();
+		Map<String, byte[]> output = new ConcurrentHashMap<>();
+
+		try {
+			setup.apply(remapper);
+			remapper.updateInputs(Collections.singletonList(input), Collections.emptyList());
+			remapper.apply(output::put);
+		} finally {
+			remapper.finish();
+		}
+
+		byte[] data = output.get("in/Impl");
+		assertNotNull(data);
+
+		ClassNode node = new ClassNode();
+		new ClassReader(data).accept(node, 0);
+		List<String> names = new ArrayList<>();
+
+		for (MethodNode method : node.methods) {
+			if (method.desc.equals("()V") && !method.name.equals("<init>")) names.add(method.name);
+		}
+
+		assertEquals(1, names.size());
+
+		return names.get(0);
+	}
+
+	private static void write(Path dir, byte[] data) throws IOException {
+		String name = new ClassReader(data).getClassName();
+		Path file = dir.resolve(name+".class");
+		Files.createDirectories(file.getParent());
+		Files.write(file, data);
+	}
+
+	/**
+	 * Create a class declaring the public method m()V, abstract for interfaces.
+	 */
+	private static byte[] createClass(String name, int access, String superName, String iface) {
+		boolean isInterface = (access & Opcodes.ACC_INTERFACE) != 0;
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_8, access | (isInterface ? 0 : Opcodes.ACC_SUPER), name, null, superName, iface != null ? new String[] { iface } : null);
+
+		if (isInterface) {
+			cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "m", "()V", null, null).visitEnd();
+		} else {
+			MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "m", "()V", null, null);
+			mv.visitCode();
+			mv.visitInsn(Opcodes.RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		cw.visitEnd();
+
+		return cw.toByteArray();
+	}
+
+	private interface ClassPathSetup {
+		void apply(TinyRemapper remapper) throws IOException;
+	}
+}
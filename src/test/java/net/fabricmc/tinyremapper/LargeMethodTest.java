@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.LocalVariableNode;
+
+/**
+ * Local variable processing of large methods, which has to scale linearly with the method size.
+ */
+public class LargeMethodTest {
+	/**
+	 * Remap methods with 16 times the instructions and locals, linear processing takes about 16 times as long while the
+	 * quadratic op index lookup took 256 times as long.
+	 */
+	@Test
+	public void linearScaling() {
+		long small = getRemapTime(4000);
+		long large = getRemapTime(64000);
+
+		assertTrue(String.format("small %d ns, large %d ns", small, large), large < small * 64);
+	}
+
+	/**
+	 * Get the fastest of several runs, excluding warm-up.
+	 */
+	private static long getRemapTime(int instructions) {
+		byte[] data = createClass(instructions);
+		TinyRemapper remapper = TinyRemapper.newRemapper()
+				.withMappings(new IMappingProvider() {
+					@Override
+					public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap) { }
+
+					@Override
+					public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap, Map<String, String[]> localMap) {
+						localMap.put("large/Gen/"+MemberInstance.getMethodId("large", "(I)V"), new String[] { "value" });
+					}
+				})
+				.threads(1)
+				.build();
+
+		try {
+			remapper.updateInputs(Collections.singletonList(data), Collections.emptyList());
+			AsmRemapper asmRemapper = remapper.getRemapper();
+			long ret = Long.MAX_VALUE;
+
+			for (int i = 0; i < 15; i++) {
+				long start = System.nanoTime();
+				ClassWriter writer = new ClassWriter(0);
+				new ClassReader(data).accept(new AsmClassRemapper(writer, asmRemapper, false, false, false), ClassReader.EXPAND_FRAMES);
+				byte[] output = writer.toByteArray();
+				long time = System.nanoTime() - start;
+
+				if (i >= 5) ret = Math.min(ret, time);
+				if (i == 0) assertArgName(output);
+			}
+
+			return ret;
+		} finally {
+			remapper.finish();
+		}
+	}
+
+	private static void assertArgName(byte[] data) {
+		ClassNode node = new ClassNode();
+		new ClassReader(data).accept(node, 0);
+
+		for (LocalVariableNode lv : node.methods.get(0).localVariables) {
+			if (lv.index == 0) assertEquals("value", lv.name);
+		}
+	}
+
+	/**
+	 * Create a static method with a local variable starting every 16 instructions, as in large generated code.
+	 */
+	private static byte[] createClass(int instructions) {
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "large/Gen", null, "java/lang/Object", null);
+
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "large", "(I)V", null, null);
+		Label end = new Label();
+		List<Label> starts = new ArrayList<>();
+
+		mv.visitCode();
+
+		for (int i = 0; i < instructions - 1; i++) {
+			if (i % 16 == 0) {
+				Label start = new Label();
+				mv.visitLabel(start);
+				starts.add(start);
+			}
+
+			mv.visitInsn(Opcodes.NOP);
+		}
+
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitLabel(end);
+		mv.visitLocalVariable("arg", "I", null, starts.get(0), end, 0);
+
+		for (int i = 0; i < starts.size(); i++) {
+			mv.visitLocalVariable("local"+i, "I", null, starts.get(i), end, 1 + i % 250);
+		}
+
+		mv.visitMaxs(0, 251);
+		mv.visitEnd();
+		cw.visitEnd();
+
+		return cw.toByteArray();
+	}
+}
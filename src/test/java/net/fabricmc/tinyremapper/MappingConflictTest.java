@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Conflicting mappings fail the operation instead of terminating the process.
+ */
+public class MappingConflictTest {
+	@Test
+	public void conflictingOverride() {
+		// conf/Sub.m overrides conf/Base.m, but the mappings give them different names
+		TinyRemapper remapper = TinyRemapper.newRemapper()
+				.withMappings((classMap, fieldMap, methodMap) -> {
+					methodMap.put("conf/Base/m()V", "first");
+					methodMap.put("conf/Sub/m()V", "second");
+				})
+				.threads(1)
+				.build();
+
+		try {
+			remapper.updateInputs(Arrays.asList(createClass("conf/Base", "java/lang/Object"), createClass("conf/Sub", "conf/Base")), Collections.emptyList());
+			remapper.apply((name, data) -> { });
+			fail();
+		} catch (MappingConflictException e) {
+			// expected
+		} finally {
+			remapper.finish();
+		}
+	}
+
+	private static byte[] createClass(String name, String superName) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "m", "()V", null, null);
+		mv.visitCode();
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		cw.visitEnd();
+
+		return cw.toByteArray();
+	}
+}
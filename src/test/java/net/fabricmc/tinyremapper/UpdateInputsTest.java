@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Incremental updates through {@link TinyRemapper#updateInputs} compared against the initial remapping.
+ */
+public class UpdateInputsTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Before
+	public void setup() {
+		// orig/Sub moves to another package, so its call to the package private orig/Base.m needs an access fix
+		remapper = TinyRemapper.newRemapper()
+				.withMappings((classMap, fieldMap, methodMap) -> classMap.put("orig/Sub", "moved/Sub"))
+				.fixPackageAccess(true)
+				.threads(1)
+				.build();
+	}
+
+	@After
+	public void tearDown() {
+		remapper.finish();
+	}
+
+	@Test
+	public void replaceBodyWithAccessFix() {
+		remapper.updateInputs(Arrays.asList(createBase("v1"), createSub()), Collections.emptyList());
+
+		Map<String, List<byte[]>> output = apply(null);
+		assertBase(output, "v1");
+
+		// editing the method body keeps the structure, the access fix has to carry over to the new class
+
+		Set<String> changed = remapper.updateInputs(Collections.singletonList(createBase("v2")), Collections.emptyList());
+		assertTrue(changed.contains("orig/Base"));
+
+		output = apply(changed);
+		assertBase(output, "v2");
+	}
+
+	@Test
+	public void accessFixOnClassPath() throws IOException {
+		// orig/Base is only on the class path, it gets analyzed for the access check but must never be output
+		Path classPath = tmp.newFolder("cp").toPath();
+		Path file = classPath.resolve("orig/Base.class");
+		Files.createDirectories(file.getParent());
+		Files.write(file, createBase("v1"));
+
+		remapper.attachClassPath(ClassPathSnapshot.create(classPath));
+		remapper.updateInputs(Collections.singletonList(createSub()), Collections.emptyList());
+
+		Map<String, List<byte[]>> output = apply(null);
+		assertEquals(Collections.singleton("moved/Sub"), output.keySet());
+
+		Set<String> changed = remapper.updateInputs(Collections.singletonList(createSub()), Collections.emptyList());
+		output = apply(changed);
+		assertEquals(Collections.singleton("moved/Sub"), output.keySet());
+	}
+
+	private Map<String, List<byte[]>> apply(Set<String> inputClasses) {
+		Map<String, List<byte[]>> ret = new ConcurrentHashMap<>();
+		BiConsumer<String, byte[]> consumer = (name, data) -> ret.computeIfAbsent(name, ignore -> Collections.synchronizedList(new ArrayList<>())).add(data);
+
+		if (inputClasses == null) {
+			remapper.apply(consumer);
+		} else {
+			remapper.apply(consumer, inputClasses);
+		}
+
+		return ret;
+	}
+
+	private static void assertBase(Map<String, List<byte[]>> output, String version) {
+		List<byte[]> written = output.get("orig/Base");
+		assertNotNull(written);
+		assertEquals("orig/Base written once", 1, written.size());
+
+		ClassNode node = new ClassNode();
+		new ClassReader(written.get(0)).accept(node, 0);
+		MethodNode method = null;
+
+		for (MethodNode m : node.methods) {
+			if (m.name.equals("m")) method = m;
+		}
+
+		assertNotNull(method);
+		assertTrue("m made public", (method.access & Opcodes.ACC_PUBLIC) != 0);
+		assertEquals(version, ((LdcInsnNode) method.instructions.getFirst()).cst);
+	}
+
+	private static byte[] createBase(String version) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "orig/Base", null, "java/lang/Object", null);
+		addConstructor(cw, "java/lang/Object");
+
+		MethodVisitor mv = cw.visitMethod(0, "m", "()Ljava/lang/String;", null, null);
+		mv.visitCode();
+		mv.visitLdcInsn(version);
+		mv.visitInsn(Opcodes.ARETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		cw.visitEnd();
+
+		return cw.toByteArray();
+	}
+
+	private static byte[] createSub() {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "orig/Sub", null, "orig/Base", null);
+		addConstructor(cw, "orig/Base");
+
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "call", "()Ljava/lang/String;", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "orig/Sub", "m", "()Ljava/lang/String;", false); // resolved through orig/Base
+		mv.visitInsn(Opcodes.ARETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		cw.visitEnd();
+
+		return cw.toByteArray();
+	}
+
+	private static void addConstructor(ClassWriter cw, String superName) {
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private TinyRemapper remapper;
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Round trips through {@link ZipWriter} and {@link ZipReader}, reading the results back with java.util.zip.
+ */
+public class ZipWriterTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void writeReadBack() throws IOException {
+		Path file = tmp.getRoot().toPath().resolve("out.jar");
+		byte[] compressible = text(10000);
+		byte[] incompressible = random(10000, 1);
+		byte[] empty = new byte[0];
+
+		try (ZipWriter writer = new ZipWriter(file)) {
+			writer.write("a/b/Compressible.class", compressible);
+			writer.write("a/Incompressible.class", incompressible);
+			writer.write("Empty.txt", empty);
+		}
+
+		try (ZipFile zip = new ZipFile(file.toFile())) {
+			assertEquals(list("a/", "a/b/", "a/b/Compressible.class", "a/Incompressible.class", "Empty.txt"), names(zip));
+			assertTrue(zip.getEntry("a/").isDirectory());
+			assertTrue(zip.getEntry("a/b/").isDirectory());
+
+			assertEntry(zip, "a/b/Compressible.class", ZipEntry.DEFLATED, compressible);
+			assertEntry(zip, "a/Incompressible.class", ZipEntry.STORED, incompressible);
+			assertEntry(zip, "Empty.txt", ZipEntry.STORED, empty);
+		}
+
+		try (ZipReader reader = new ZipReader(file)) {
+			Map<String, ZipReader.Entry> entries = entries(reader);
+
+			assertArrayEquals(compressible, reader.read(entries.get("a/b/Compressible.class")));
+			assertArrayEquals(incompressible, reader.read(entries.get("a/Incompressible.class")));
+			assertArrayEquals(empty, reader.read(entries.get("Empty.txt")));
+		}
+	}
+
+	@Test
+	public void replaceEntry() throws IOException {
+		Path file = tmp.getRoot().toPath().resolve("out.jar");
+		byte[] data = text(100);
+
+		try (ZipWriter writer = new ZipWriter(file)) {
+			writer.write("A.class", text(200));
+			writer.write("A.class", data);
+		}
+
+		try (ZipFile zip = new ZipFile(file.toFile())) {
+			assertEquals(list("A.class"), names(zip));
+			assertEntry(zip, "A.class", ZipEntry.DEFLATED, data);
+		}
+	}
+
+	@Test
+	public void copyRaw() throws IOException {
+		copyRaw(false);
+	}
+
+	@Test
+	public void copyRawDeterministic() throws IOException {
+		copyRaw(true);
+	}
+
+	private void copyRaw(boolean deterministic) throws IOException {
+		Path src = tmp.getRoot().toPath().resolve("src.jar");
+		Path file = tmp.getRoot().toPath().resolve("out.jar");
+		byte[] stored = random(5000, 2);
+		byte[] deflated = text(5000);
+
+		try (ZipOutputStream os = new ZipOutputStream(Files.newOutputStream(src))) {
+			ZipEntry entry = new ZipEntry("res/stored.bin");
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(stored.length);
+			entry.setCrc(crc(stored));
+			os.putNextEntry(entry);
+			os.write(stored);
+
+			os.putNextEntry(new ZipEntry("res/deflated.txt"));
+			os.write(deflated);
+		}
+
+		try (ZipReader reader = new ZipReader(src);
+				ZipWriter writer = new ZipWriter(file, deterministic)) {
+			Map<String, ZipReader.Entry> entries = entries(reader);
+
+			assertEquals(ZipWriter.methodStored, entries.get("res/stored.bin").method);
+			assertEquals(ZipWriter.methodDeflated, entries.get("res/deflated.txt").method);
+
+			writer.copyRaw("copy/stored.bin", reader, entries.get("res/stored.bin"));
+			writer.copyRaw("copy/deflated.txt", reader, entries.get("res/deflated.txt"));
+		}
+
+		try (ZipFile zip = new ZipFile(file.toFile())) {
+			assertEntry(zip, "copy/stored.bin", ZipEntry.STORED, stored);
+			assertEntry(zip, "copy/deflated.txt", ZipEntry.DEFLATED, deflated);
+		}
+	}
+
+	@Test
+	public void deterministicOrder() throws IOException {
+		Path first = tmp.getRoot().toPath().resolve("first.jar");
+		Path second = tmp.getRoot().toPath().resolve("second.jar");
+		List<String> names = new ArrayList<>();
+
+		for (int i = 0; i < 50; i++) {
+			names.add("p"+(i % 5)+"/C"+i+".class");
+		}
+
+		try (ZipWriter writer = new ZipWriter(first, true)) {
+			for (String name : names) {
+				writer.write(name, text(name.length() * 10));
+			}
+		}
+
+		Collections.shuffle(names, new Random(3));
+
+		try (ZipWriter writer = new ZipWriter(second, true)) {
+			for (String name : names) {
+				writer.write(name, text(name.length() * 10));
+			}
+		}
+
+		assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+
+		try (ZipFile zip = new ZipFile(first.toFile())) {
+			List<String> written = names(zip);
+			List<String> sorted = new ArrayList<>(written);
+			Collections.sort(sorted);
+
+			assertEquals(sorted, written);
+			assertEquals(55, written.size());
+		}
+	}
+
+	@Test
+	public void zip64EntryCount() throws IOException {
+		Path file = tmp.getRoot().toPath().resolve("out.jar");
+		int count = 0x10000 + 10;
+
+		try (ZipWriter writer = new ZipWriter(file)) {
+			for (int i = 0; i < count; i++) {
+				writer.write("C"+i+".class", new byte[] { (byte) i });
+			}
+		}
+
+		try (ZipFile zip = new ZipFile(file.toFile())) {
+			assertEquals(count, zip.size());
+			assertEntry(zip, "C65540.class", ZipEntry.STORED, new byte[] { (byte) 65540 });
+		}
+
+		try (ZipReader reader = new ZipReader(file)) {
+			assertEquals(count, reader.getEntries().size());
+		}
+	}
+
+	@Test
+	public void zip64Offsets() throws Exception {
+		Path file = tmp.getRoot().toPath().resolve("out.jar");
+		byte[] data = text(1000);
+
+		try (ZipWriter writer = new ZipWriter(file)) {
+			writer.write("Low.class", data);
+
+			// continue past the 4 GiB limit of the regular offset fields, the skipped region stays sparse
+			Field position = ZipWriter.class.getDeclaredField("position");
+			position.setAccessible(true);
+			position.setLong(writer, 0x100000000L);
+
+			writer.write("high/High.class", data);
+		}
+
+		assertTrue(Files.size(file) > 0xffffffffL);
+
+		try (ZipFile zip = new ZipFile(file.toFile())) {
+			assertEquals(list("Low.class", "high/", "high/High.class"), names(zip));
+			assertEntry(zip, "Low.class", ZipEntry.DEFLATED, data);
+			assertEntry(zip, "high/High.class", ZipEntry.DEFLATED, data);
+		}
+
+		try (ZipReader reader = new ZipReader(file)) {
+			Map<String, ZipReader.Entry> entries = entries(reader);
+
+			assertEquals(0x100000000L, entries.get("high/").localHeaderOffset);
+			assertArrayEquals(data, reader.read(entries.get("high/High.class")));
+		}
+	}
+
+	@Test
+	public void concurrentClose() throws Exception {
+		Path file = tmp.getRoot().toPath().resolve("out.jar");
+		ZipWriter writer = new ZipWriter(file);
+		Set<String> written = ConcurrentHashMap.newKeySet();
+		CountDownLatch started = new CountDownLatch(4);
+		List<Thread> threads = new ArrayList<>();
+
+		for (int t = 0; t < 4; t++) {
+			int id = t;
+
+			Thread thread = new Thread(() -> {
+				started.countDown();
+
+				for (int i = 0; ; i++) {
+					String name = "t"+id+"/C"+i+".class";
+
+					try {
+						writer.write(name, text(2000 + i % 100));
+						written.add(name);
+					} catch (IllegalStateException e) { // closed
+						return;
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+
+			thread.start();
+			threads.add(thread);
+		}
+
+		started.await();
+		Thread.sleep(50);
+		writer.close();
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		try (ZipFile zip = new ZipFile(file.toFile())) {
+			int files = 0;
+
+			for (ZipEntry entry : Collections.list(zip.entries())) {
+				if (entry.isDirectory()) continue;
+
+				assertTrue(written.contains(entry.getName()));
+				assertNotNull(read(zip, entry));
+				files++;
+			}
+
+			assertEquals(written.size(), files);
+		}
+	}
+
+	@Test
+	public void writeAfterClose() throws IOException {
+		ZipWriter writer = new ZipWriter(tmp.getRoot().toPath().resolve("out.jar"));
+		writer.close();
+
+		try {
+			writer.write("A.class", text(10));
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private static void assertEntry(ZipFile zip, String name, int method, byte[] data) throws IOException {
+		ZipEntry entry = zip.getEntry(name);
+		assertNotNull(name, entry);
+		assertEquals(name, method, entry.getMethod());
+		assertEquals(name, data.length, entry.getSize());
+		assertEquals(name, crc(data), entry.getCrc());
+		assertArrayEquals(name, data, read(zip, entry));
+	}
+
+	private static byte[] read(ZipFile zip, ZipEntry entry) throws IOException {
+		try (InputStream is = zip.getInputStream(entry)) {
+			ByteArrayOutputStream ret = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int len;
+
+			while ((len = is.read(buffer)) >= 0) {
+				ret.write(buffer, 0, len);
+			}
+
+			return ret.toByteArray();
+		}
+	}
+
+	private static List<String> names(ZipFile zip) {
+		List<String> ret = new ArrayList<>();
+
+		for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+			ret.add(e.nextElement().getName());
+		}
+
+		return ret;
+	}
+
+	private static Map<String, ZipReader.Entry> entries(ZipReader reader) {
+		Map<String, ZipReader.Entry> ret = new HashMap<>();
+
+		for (ZipReader.Entry entry : reader.getEntries()) {
+			ret.put(entry.name, entry);
+		}
+
+		return ret;
+	}
+
+	private static List<String> list(String... values) {
+		List<String> ret = new ArrayList<>();
+		Collections.addAll(ret, values);
+
+		return ret;
+	}
+
+	private static byte[] text(int size) {
+		byte[] ret = new byte[size];
+
+		for (int i = 0; i < size; i++) {
+			ret[i] = (byte) ('a' + i % 7);
+		}
+
+		return ret;
+	}
+
+	private static byte[] random(int size, long seed) {
+		byte[] ret = new byte[size];
+		new Random(seed).nextBytes(ret);
+
+		return ret;
+	}
+
+	private static long crc(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+
+		return crc.getValue();
+	}
+}
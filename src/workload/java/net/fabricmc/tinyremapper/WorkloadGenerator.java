@@ -0,0 +1,578 @@
+/*
+ * Copyright (C) 2016, 2018 Player, asie
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.fabricmc.tinyremapper;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates synthetic input and class path jars with matching Tiny v1 and v2 mappings for scale and stress testing.
+ *
+ * <p>Classes are organized in families, each in its own package with three interfaces forming a diamond and a tree of
+ * classes with the configured depth and fan-out, every class overriding the methods of its super class. A share of
+ * the families goes to the class path jar, the roots of the input families extend classes from those and call their
+ * methods. All input classes and members are mapped, the class path stays unmapped.
+ *
+ * <p>Everything is written while generating, so the memory use doesn't depend on the class count. The output only
+ * depends on the configuration including the seed.
+ */
+public final class WorkloadGenerator {
+	public static class Builder {
+		public Builder classes(int value) {
+			classes = value;
+			return this;
+		}
+
+		/**
+		 * Number of levels of each class tree.
+		 */
+		public Builder depth(int value) {
+			depth = value;
+			return this;
+		}
+
+		/**
+		 * Number of direct subclasses of each non-leaf class.
+		 */
+		public Builder fanOut(int value) {
+			fanOut = value;
+			return this;
+		}
+
+		public Builder fieldsPerClass(int value) {
+			fieldsPerClass = value;
+			return this;
+		}
+
+		public Builder methodsPerClass(int value) {
+			methodsPerClass = value;
+			return this;
+		}
+
+		/**
+		 * Number of local variables in each method besides its parameters.
+		 */
+		public Builder localsPerMethod(int value) {
+			localsPerMethod = value;
+			return this;
+		}
+
+		/**
+		 * Share of classes implementing both sides of their family's interface diamond.
+		 */
+		public Builder diamondRatio(double value) {
+			diamondRatio = value;
+			return this;
+		}
+
+		/**
+		 * Average number of lambdas, each an invokedynamic call site with a synthetic implementation method, per class.
+		 */
+		public Builder lambdaDensity(double value) {
+			lambdaDensity = value;
+			return this;
+		}
+
+		/**
+		 * Number of non-class files in the input jar, in addition to the manifest.
+		 */
+		public Builder resources(int value) {
+			resources = value;
+			return this;
+		}
+
+		/**
+		 * Share of class families placed in the class path jar instead of the input jar.
+		 */
+		public Builder classPathRatio(double value) {
+			classPathRatio = value;
+			return this;
+		}
+
+		public Builder seed(long value) {
+			seed = value;
+			return this;
+		}
+
+		public WorkloadGenerator build() {
+			if (classes < 1 || depth < 1 || fanOut < 1 || methodsPerClass < 1) {
+				throw new IllegalArgumentException("classes, depth, fanOut and methodsPerClass have to be positive");
+			}
+
+			return new WorkloadGenerator(classes, depth, fanOut, fieldsPerClass, methodsPerClass, localsPerMethod,
+					diamondRatio, lambdaDensity, resources, classPathRatio, seed);
+		}
+
+		private int classes = 1000;
+		private int depth = 4;
+		private int fanOut = 3;
+		private int fieldsPerClass = 4;
+		private int methodsPerClass = 6;
+		private int localsPerMethod = 3;
+		private double diamondRatio = 0.1;
+		private double lambdaDensity = 0.5;
+		private int resources = 10;
+		private double classPathRatio = 0.2;
+		private long seed = 0;
+	}
+
+	/**
+	 * Generate a workload from the command line, writing input.jar, classpath.jar, mappings-v1.tiny and
+	 * mappings-v2.tiny into the given directory.
+	 */
+	public static void main(String[] rawArgs) throws IOException {
+		Builder builder = new Builder();
+		Path dir = null;
+
+		for (String arg : rawArgs) {
+			if (!arg.startsWith("--")) {
+				dir = Paths.get(arg);
+				continue;
+			}
+
+			int valueSepPos = arg.indexOf('=');
+			String argKey = valueSepPos == -1 ? arg.substring(2) : arg.substring(2, valueSepPos);
+			String value = valueSepPos == -1 ? "" : arg.substring(valueSepPos + 1);
+
+			try {
+				switch (argKey.toLowerCase(Locale.ROOT)) {
+				case "classes": builder.classes(Integer.parseInt(value)); break;
+				case "depth": builder.depth(Integer.parseInt(value)); break;
+				case "fanout": builder.fanOut(Integer.parseInt(value)); break;
+				case "fields": builder.fieldsPerClass(Integer.parseInt(value)); break;
+				case "methods": builder.methodsPerClass(Integer.parseInt(value)); break;
+				case "locals": builder.localsPerMethod(Integer.parseInt(value)); break;
+				case "diamonds": builder.diamondRatio(Double.parseDouble(value)); break;
+				case "lambdas": builder.lambdaDensity(Double.parseDouble(value)); break;
+				case "resources": builder.resources(Integer.parseInt(value)); break;
+				case "classpath": builder.classPathRatio(Double.parseDouble(value)); break;
+				case "seed": builder.seed(Long.parseLong(value)); break;
+				default:
+					System.out.println("invalid argument: "+arg+".");
+					System.exit(1);
+				}
+			} catch (NumberFormatException e) {
+				System.out.println("invalid value for "+argKey+": "+value);
+				System.exit(1);
+			}
+		}
+
+		if (dir == null) {
+			System.out.println("usage: <output dir> [--classes=<n>] [--depth=<n>] [--fanOut=<n>] [--fields=<n>] [--methods=<n>] [--locals=<n>] [--diamonds=<ratio>] [--lambdas=<density>] [--resources=<n>] [--classPath=<ratio>] [--seed=<n>]");
+			System.exit(1);
+		}
+
+		long startTime = System.nanoTime();
+
+		Files.createDirectories(dir);
+		builder.build().generate(dir.resolve("input.jar"), dir.resolve("classpath.jar"), dir.resolve("mappings-v1.tiny"), dir.resolve("mappings-v2.tiny"));
+
+		System.out.printf("Generated in %.2f ms.\n", (System.nanoTime() - startTime) / 1e6);
+	}
+
+	private WorkloadGenerator(int classes, int depth, int fanOut, int fieldsPerClass, int methodsPerClass, int localsPerMethod,
+			double diamondRatio, double lambdaDensity, int resources, double classPathRatio, long seed) {
+		this.classes = classes;
+		this.fanOut = fanOut;
+		this.fieldsPerClass = fieldsPerClass;
+		this.methodsPerClass = methodsPerClass;
+		this.localsPerMethod = localsPerMethod;
+		this.diamondRatio = diamondRatio;
+		this.lambdaDensity = lambdaDensity;
+		this.resources = resources;
+		this.classPathPeriod = classPathRatio > 0 ? Math.max((int) Math.round(1 / classPathRatio), 1) : 0;
+		this.seed = seed;
+
+		long treeSize = 0;
+		long levelSize = 1;
+
+		for (int i = 0; i < depth && treeSize < classes; i++) {
+			treeSize += levelSize;
+			levelSize *= fanOut;
+		}
+
+		this.treeSize = (int) Math.min(treeSize, classes);
+	}
+
+	/**
+	 * Write the workload, any of the paths may be null to skip the respective output.
+	 */
+	public void generate(Path inputJar, Path classPathJar, Path tinyV1, Path tinyV2) throws IOException {
+		try (JarSink input = new JarSink(inputJar);
+				JarSink classPath = new JarSink(classPathJar);
+				TinySink v1 = new TinySink(tinyV1, "v1\tofficial\tnamed\n");
+				TinySink v2 = new TinySink(tinyV2, "tiny\t2\t0\tofficial\tnamed\n")) {
+			input.writeManifest();
+			int remaining = classes;
+
+			for (int family = 0; remaining > 0; family++) {
+				boolean isLibrary = isLibrary(family);
+				int count = Math.min(remaining, treeSize + interfaceCount);
+				remaining -= count;
+
+				if (isLibrary) {
+					for (int pos = 0; pos < count; pos++) {
+						classPath.write(getClassName(family, pos), generateLibraryClass(family, pos));
+					}
+				} else {
+					generateFamily(family, count, input, v1, v2);
+				}
+			}
+
+			for (int i = 0; i < resources; i++) {
+				input.writeResource(String.format("assets/generated/resource%d.txt", i), String.format("resource %d\n", i).getBytes(StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	private boolean isLibrary(int family) {
+		return classPathPeriod > 0 && family % classPathPeriod == 0;
+	}
+
+	private String getPackage(int family) {
+		return String.format(isLibrary(family) ? "lib/p%d/" : "gen/p%d/", family);
+	}
+
+	/**
+	 * Name of a class in a family, positions below interfaceCount denote the interfaces, the tree follows in heap
+	 * order.
+	 */
+	private String getClassName(int family, int pos) {
+		return pos < interfaceCount ? getPackage(family)+"I"+pos : getPackage(family)+"C"+(pos - interfaceCount);
+	}
+
+	private void generateFamily(int family, int count, JarSink jar, TinySink v1, TinySink v2) throws IOException {
+		String pkg = getPackage(family);
+		String root = pkg+"C0";
+		String methodDesc = "(IL"+root+";)L"+root+";";
+		String fieldDesc = "L"+root+";";
+
+		for (int pos = 0; pos < count; pos++) {
+			String name = getClassName(family, pos);
+			String mappedName = "named/"+name.substring(4);
+			v1.write("CLASS\t%s\t%s\n", name, mappedName);
+			v2.write("c\t%s\t%s\n", name, mappedName);
+
+			if (pos < interfaceCount) {
+				jar.write(name, generateInterface(pkg, pos));
+
+				if (pos == 0) writeCallMapping(name, v1, v2);
+
+				continue;
+			}
+
+			int node = pos - interfaceCount;
+			Random random = new Random(seed * 0x9E3779B97F4A7C15L + (long) family * 0x100000001L + node);
+			String superName;
+			String libraryClass = null;
+
+			if (node > 0) {
+				superName = pkg+"C"+((node - 1) / fanOut);
+			} else if (classPathPeriod > 0) {
+				int libraryFamily = family - family % classPathPeriod; // always complete, only the last family may be cut short
+				superName = libraryClass = getClassName(libraryFamily, interfaceCount + random.nextInt(treeSize));
+			} else {
+				superName = "java/lang/Object";
+			}
+
+			boolean diamond = random.nextDouble() < diamondRatio;
+			int lambdas = (int) lambdaDensity + (random.nextDouble() < lambdaDensity - (int) lambdaDensity ? 1 : 0);
+
+			ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+			cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName,
+					diamond ? new String[] { pkg+"I1", pkg+"I2" } : null);
+			cw.visitSource("C"+node+".java", null);
+			generateConstructor(cw, superName);
+
+			for (int i = 0; i < fieldsPerClass; i++) {
+				cw.visitField(Opcodes.ACC_PROTECTED, "f"+i, fieldDesc, null, null).visitEnd();
+				v1.write("FIELD\t%s\t%s\tf%d\tfield%d\n", name, fieldDesc, i, i);
+				v2.write("\tf\t%s\tf%d\tfield%d\n", fieldDesc, i, i);
+			}
+
+			for (int i = 0; i < methodsPerClass; i++) {
+				MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "m"+i, methodDesc, null, null);
+				Label start = new Label();
+				Label end = new Label();
+				mv.visitCode();
+				mv.visitLabel(start);
+				int lastLocal = generateLocals(mv, 3);
+
+				if (i == 0 && libraryClass != null) { // call inherited class path code
+					mv.visitVarInsn(Opcodes.ALOAD, 0);
+					mv.visitVarInsn(Opcodes.ILOAD, lastLocal);
+					mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, name, "libMethod0", "(I)I", false);
+					mv.visitInsn(Opcodes.POP);
+				}
+
+				if (i == 0 && fieldsPerClass > 0) {
+					mv.visitVarInsn(Opcodes.ALOAD, 0);
+					mv.visitVarInsn(Opcodes.ALOAD, 2);
+					mv.visitFieldInsn(Opcodes.PUTFIELD, name, "f0", fieldDesc);
+				}
+
+				mv.visitVarInsn(Opcodes.ALOAD, 0);
+				mv.visitVarInsn(Opcodes.ILOAD, lastLocal);
+				mv.visitVarInsn(Opcodes.ALOAD, 2);
+				mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, name, "m"+((i + 1) % methodsPerClass), methodDesc, false);
+				mv.visitInsn(Opcodes.ARETURN);
+				mv.visitLabel(end);
+				mv.visitLocalVariable("this", "L"+name+";", null, start, end, 0);
+				mv.visitLocalVariable("index", "I", null, start, end, 1);
+				mv.visitLocalVariable("value", fieldDesc, null, start, end, 2);
+
+				for (int j = 0; j < localsPerMethod; j++) {
+					mv.visitLocalVariable("local"+j, "I", null, start, end, 3 + j);
+				}
+
+				mv.visitMaxs(0, 0);
+				mv.visitEnd();
+
+				v1.write("METHOD\t%s\t%s\tm%d\tmethod%d\n", name, methodDesc, i, i);
+				v2.write("\tm\t%s\tm%d\tmethod%d\n\t\tp\t1\t\tidx\n\t\tp\t2\t\tval\n", methodDesc, i, i);
+			}
+
+			if (diamond) {
+				generateCall(cw);
+				writeCallMapping(name, v1, v2);
+			}
+
+			if (lambdas > 0) {
+				MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "lambdas", "()V", null, null);
+				mv.visitCode();
+
+				for (int i = 0; i < lambdas; i++) {
+					mv.visitInvokeDynamicInsn("call", "()L"+pkg+"I0;", lambdaMetafactory,
+							Type.getType("(I)I"), new Handle(Opcodes.H_INVOKESTATIC, name, "lambda$lambdas$"+i, "(I)I", false), Type.getType("(I)I"));
+					mv.visitInsn(Opcodes.POP);
+				}
+
+				mv.visitInsn(Opcodes.RETURN);
+				mv.visitMaxs(0, 0);
+				mv.visitEnd();
+
+				for (int i = 0; i < lambdas; i++) {
+					mv = cw.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, "lambda$lambdas$"+i, "(I)I", null, null);
+					mv.visitCode();
+					mv.visitVarInsn(Opcodes.ILOAD, 0);
+					mv.visitLdcInsn(i);
+					mv.visitInsn(Opcodes.IADD);
+					mv.visitInsn(Opcodes.IRETURN);
+					mv.visitMaxs(0, 0);
+					mv.visitEnd();
+				}
+			}
+
+			cw.visitEnd();
+			jar.write(name, cw.toByteArray());
+		}
+	}
+
+	/**
+	 * Generate one of the interfaces forming a family's diamond, I0 declaring the method and I1, I2 extending it.
+	 */
+	private static byte[] generateInterface(String pkg, int pos) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, pkg+"I"+pos, null, "java/lang/Object",
+				pos == 0 ? null : new String[] { pkg+"I0" });
+
+		if (pos == 0) {
+			cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "call", "(I)I", null, null).visitEnd();
+		}
+
+		cw.visitEnd();
+
+		return cw.toByteArray();
+	}
+
+	private static void writeCallMapping(String owner, TinySink v1, TinySink v2) throws IOException {
+		v1.write("METHOD\t%s\t(I)I\tcall\tinvoke\n", owner);
+		v2.write("\tm\t(I)I\tcall\tinvoke\n\t\tp\t1\t\targ\n");
+	}
+
+	private byte[] generateLibraryClass(int family, int pos) {
+		String name = getClassName(family, pos);
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+		if (pos < interfaceCount) {
+			cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, name, null, "java/lang/Object", null);
+			cw.visitEnd();
+
+			return cw.toByteArray();
+		}
+
+		int node = pos - interfaceCount;
+		String superName = node > 0 ? getPackage(family)+"C"+((node - 1) / fanOut) : "java/lang/Object";
+
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+		generateConstructor(cw, superName);
+
+		for (int i = 0; i < fieldsPerClass; i++) {
+			cw.visitField(Opcodes.ACC_PROTECTED, "libField"+i, "I", null, null).visitEnd();
+		}
+
+		for (int i = 0; i < methodsPerClass; i++) {
+			MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "libMethod"+i, "(I)I", null, null);
+			mv.visitCode();
+			mv.visitVarInsn(Opcodes.ILOAD, 1);
+			mv.visitInsn(Opcodes.IRETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		cw.visitEnd();
+
+		return cw.toByteArray();
+	}
+
+	private static void generateConstructor(ClassWriter cw, String superName) {
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private static void generateCall(ClassWriter cw) {
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "call", "(I)I", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ILOAD, 1);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Generate a chain of int locals derived from the first parameter.
+	 *
+	 * @return Index of the last local, or the parameter if there are none.
+	 */
+	private int generateLocals(MethodVisitor mv, int firstLocal) {
+		int prev = 1;
+
+		for (int i = 0; i < localsPerMethod; i++) {
+			mv.visitVarInsn(Opcodes.ILOAD, prev);
+			mv.visitLdcInsn(i + 1);
+			mv.visitInsn(Opcodes.IADD);
+			mv.visitVarInsn(Opcodes.ISTORE, firstLocal + i);
+			prev = firstLocal + i;
+		}
+
+		return prev;
+	}
+
+	private static final class JarSink implements Closeable {
+		JarSink(Path file) throws IOException {
+			this.zos = file != null ? new ZipOutputStream(Files.newOutputStream(file)) : null;
+		}
+
+		void writeManifest() throws IOException {
+			if (zos == null) return;
+
+			Manifest manifest = new Manifest();
+			manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+
+			zos.putNextEntry(createEntry("META-INF/MANIFEST.MF"));
+			manifest.write(zos);
+			zos.closeEntry();
+		}
+
+		void write(String className, byte[] data) throws IOException {
+			writeResource(className+".class", data);
+		}
+
+		void writeResource(String name, byte[] data) throws IOException {
+			if (zos == null) return;
+
+			zos.putNextEntry(createEntry(name));
+			zos.write(data);
+			zos.closeEntry();
+		}
+
+		private static ZipEntry createEntry(String name) {
+			ZipEntry ret = new ZipEntry(name);
+			ret.setTime(fixedTime);
+
+			return ret;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (zos != null) zos.close();
+		}
+
+		private static final long fixedTime = 315532800000L + 43200000L; // 1980-01-01 12:00 UTC, independent of the time zone offset
+
+		private final ZipOutputStream zos;
+	}
+
+	private static final class TinySink implements Closeable {
+		TinySink(Path file, String header) throws IOException {
+			this.writer = file != null ? Files.newBufferedWriter(file, StandardCharsets.UTF_8) : null;
+
+			if (writer != null) writer.write(header);
+		}
+
+		void write(String format, Object... args) throws IOException {
+			if (writer != null) writer.write(String.format(format, args));
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (writer != null) writer.close();
+		}
+
+		private final BufferedWriter writer;
+	}
+
+	private static final int interfaceCount = 3;
+	private static final Handle lambdaMetafactory = new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/LambdaMetafactory", "metafactory",
+			"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;", false);
+
+	private final int classes;
+	private final int treeSize;
+	private final int fanOut;
+	private final int fieldsPerClass;
+	private final int methodsPerClass;
+	private final int localsPerMethod;
+	private final double diamondRatio;
+	private final double lambdaDensity;
+	private final int resources;
+	private final int classPathPeriod; // every n-th family goes to the class path, 0 for none
+	private final long seed;
+}